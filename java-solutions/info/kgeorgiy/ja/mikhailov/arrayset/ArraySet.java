@@ -2,10 +2,43 @@ package info.kgeorgiy.ja.mikhailov.arrayset;
 
 import java.util.*;
 
-public class ArraySet<E> extends AbstractSet<E> implements SortedSet<E> {
+/**
+ * Immutable sorted set backed by an array.
+ * <p>
+ * All views ({@link #subSet}, {@link #headSet}, {@link #tailSet}, {@link #descendingSet}) share the array of
+ * the set they are created from and are O(1) index windows over it, so nested views never copy.
+ */
+public class ArraySet<E> extends AbstractSet<E> implements NavigableSet<E> {
 
-    private final List<E> arraySet;
+    private static final Object[] EMPTY = new Object[0];
+
+    private final Object[] array;
+    private final int from;
+    private final int to;
     private final Comparator<? super E> comparator;
+    private final boolean descending;
+    private final SearchIndex index;
+
+    /**
+     * Every {@code STRIDE}-th element of {@code array[base, end)}. A search first finds the block among
+     * the samples, which stay in cache, and then searches the block of {@code STRIDE} elements.
+     */
+    private static final class SearchIndex {
+        private static final int STRIDE = 64;
+
+        private final int base;
+        private final int end;
+        private final Object[] samples;
+
+        private SearchIndex(Object[] array, int base, int end) {
+            this.base = base;
+            this.end = end;
+            this.samples = new Object[(end - base + STRIDE - 1) / STRIDE];
+            for (int i = 0; i < samples.length; i++) {
+                samples[i] = array[base + i * STRIDE];
+            }
+        }
+    }
 
     public ArraySet() {
         this(null, null);
@@ -15,78 +48,530 @@ public class ArraySet<E> extends AbstractSet<E> implements SortedSet<E> {
         this(collection, null);
     }
 
+    /**
+     * Creates a set of the collection elements; of equal elements the first one is kept.
+     * <p>
+     * Another ascending {@code ArraySet} with the same comparator is shared without copying, and elements of
+     * a {@link SortedSet} with the same comparator are copied as is. Otherwise the elements are copied into
+     * an array once, sorted unless they already are, and deduplicated in place.
+     */
     public ArraySet(Collection<E> collection, Comparator<? super E> comparator) {
-        TreeSet<E> treeSet = new TreeSet<>(comparator);
-        if (collection != null) {
-            treeSet.addAll(collection);
+        this.comparator = comparator;
+        this.descending = false;
+        if (collection instanceof ArraySet<E> set && !set.descending && Objects.equals(set.comparator, comparator)) {
+            this.array = set.array;
+            this.from = set.from;
+            this.to = set.to;
+            this.index = set.index;
+            return;
+        }
+        this.from = 0;
+        this.index = null;
+        if (collection == null || collection.isEmpty()) {
+            this.array = EMPTY;
+            this.to = 0;
+        } else if (collection instanceof SortedSet<E> set && Objects.equals(set.comparator(), comparator)) {
+            this.array = collection.toArray();
+            this.to = array.length;
+        } else {
+            Object[] elements = collection.toArray();
+            int size = sortUnique(elements, comparator);
+            this.array = size < elements.length / 2 ? Arrays.copyOf(elements, size) : elements;
+            this.to = size;
         }
+    }
+
+    private ArraySet(Object[] array, int from, int to, Comparator<? super E> comparator, boolean descending, SearchIndex index) {
+        this.array = array;
+        this.from = from;
+        this.to = to;
         this.comparator = comparator;
-        this.arraySet = new ArrayList<>(treeSet);
+        this.descending = descending;
+        this.index = index;
+    }
+
+    /**
+     * Returns this set with a sampled search index, which makes lookups in large sets touch far fewer
+     * cache lines. Iteration order is unchanged; views of the returned set share the index.
+     */
+    public ArraySet<E> indexed() {
+        if (index != null && index.base <= from && to <= index.end) {
+            return this;
+        }
+        return new ArraySet<>(array, from, to, comparator, descending, new SearchIndex(array, from, to));
+    }
+
+    /**
+     * Sorts the array unless it is already sorted and moves the unique elements to its beginning.
+     *
+     * @return the number of unique elements
+     */
+    @SuppressWarnings("unchecked")
+    private static <E> int sortUnique(Object[] elements, Comparator<? super E> comparator) {
+        E[] array = (E[]) elements;
+        Comparator<? super E> order = comparator == null ? (a, b) -> ((Comparable<? super E>) a).compareTo(b) : comparator;
+        for (int i = 1; i < array.length; i++) {
+            if (order.compare(array[i - 1], array[i]) > 0) {
+                Arrays.sort(array, comparator);
+                break;
+            }
+        }
+        int size = 1;
+        for (int i = 1; i < array.length; i++) {
+            if (order.compare(array[size - 1], array[i]) != 0) {
+                array[size++] = array[i];
+            }
+        }
+        Arrays.fill(array, size, array.length, null);
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E get(int index) {
+        return (E) array[index];
+    }
+
+    /**
+     * Searches the window in ascending order, as {@link Arrays#binarySearch(Object[], int, int, Object, Comparator)} does.
+     */
+    @SuppressWarnings("unchecked")
+    private int search(E e) {
+        if (index == null) {
+            return Arrays.binarySearch((E[]) array, from, to, e, comparator);
+        }
+        int sample = Arrays.binarySearch((E[]) index.samples, e, comparator);
+        int position;
+        if (sample >= 0) {
+            position = index.base + sample * SearchIndex.STRIDE;
+        } else {
+            int block = -sample - 2;
+            if (block < 0) {
+                position = -index.base - 1;
+            } else {
+                int low = index.base + block * SearchIndex.STRIDE;
+                position = Arrays.binarySearch((E[]) array, low, Math.min(index.end, low + SearchIndex.STRIDE), e, comparator);
+            }
+        }
+        int insertion = position >= 0 ? position : -position - 1;
+        if (insertion < from) {
+            return -from - 1;
+        }
+        if (insertion >= to) {
+            return -to - 1;
+        }
+        return position;
+    }
+
+    private int ceilingIndex(E e) {
+        int index = search(e);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    private int higherIndex(E e) {
+        int index = search(e);
+        return index >= 0 ? index + 1 : -index - 1;
+    }
+
+    private int floorIndex(E e) {
+        return higherIndex(e) - 1;
+    }
+
+    private int lowerIndex(E e) {
+        return ceilingIndex(e) - 1;
+    }
+
+    private E elementOrNull(int index) {
+        return from <= index && index < to ? get(index) : null;
     }
 
     @Override
     public Iterator<E> iterator() {
-        return arraySet.iterator();
+        return new Iterator<>() {
+            private int index = descending ? to - 1 : from;
+
+            @Override
+            public boolean hasNext() {
+                return descending ? index >= from : index < to;
+            }
+
+            @Override
+            public E next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return get(descending ? index-- : index++);
+            }
+        };
+    }
+
+    @Override
+    public Iterator<E> descendingIterator() {
+        return descendingSet().iterator();
     }
 
     @Override
     public int size() {
-        return arraySet.size();
+        return to - from;
     }
 
     @Override
     public Comparator<? super E> comparator() {
-        return this.comparator;
+        return descending ? Collections.reverseOrder(comparator) : comparator;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(E a, E b) {
+        Comparator<? super E> c = comparator();
+        return c == null ? ((Comparable<? super E>) a).compareTo(b) : c.compare(a, b);
+    }
+
+    @Override
+    public E lower(E e) {
+        return elementOrNull(descending ? higherIndex(e) : lowerIndex(e));
+    }
+
+    @Override
+    public E floor(E e) {
+        return elementOrNull(descending ? ceilingIndex(e) : floorIndex(e));
+    }
+
+    @Override
+    public E ceiling(E e) {
+        return elementOrNull(descending ? floorIndex(e) : ceilingIndex(e));
+    }
+
+    @Override
+    public E higher(E e) {
+        return elementOrNull(descending ? lowerIndex(e) : higherIndex(e));
+    }
+
+    @Override
+    public E pollFirst() {
+        throw new UnsupportedOperationException("ArraySet is immutable");
+    }
+
+    @Override
+    public E pollLast() {
+        throw new UnsupportedOperationException("ArraySet is immutable");
+    }
+
+    @Override
+    public ArraySet<E> descendingSet() {
+        return new ArraySet<>(array, from, to, comparator, !descending, index);
+    }
+
+    @Override
+    public ArraySet<E> subSet(E fromElement, boolean fromInclusive, E toElement, boolean toInclusive) {
+        if (compare(fromElement, toElement) > 0) {
+            throw new IllegalArgumentException("fromElement > toElement");
+        }
+        if (descending) {
+            return ascendingWindow(toElement, toInclusive, fromElement, fromInclusive).descendingSet();
+        }
+        return ascendingWindow(fromElement, fromInclusive, toElement, toInclusive);
+    }
+
+    @Override
+    public ArraySet<E> headSet(E toElement, boolean inclusive) {
+        if (descending) {
+            return subSetImpl(inclusive ? ceilingIndex(toElement) : higherIndex(toElement), to);
+        }
+        return subSetImpl(from, inclusive ? floorIndex(toElement) + 1 : lowerIndex(toElement) + 1);
     }
 
     @Override
-    public SortedSet<E> subSet(E fromElement, E toElement) {
-        if (comparator.compare(fromElement, toElement) > 0) {
-            throw new IllegalArgumentException("fromElement > Element");
+    public ArraySet<E> tailSet(E fromElement, boolean inclusive) {
+        if (descending) {
+            return subSetImpl(from, inclusive ? floorIndex(fromElement) + 1 : lowerIndex(fromElement) + 1);
         }
-        return subSetImpl(binSearch(fromElement), binSearch(toElement));
+        return subSetImpl(inclusive ? ceilingIndex(fromElement) : higherIndex(fromElement), to);
+    }
+
+    @Override
+    public ArraySet<E> subSet(E fromElement, E toElement) {
+        return subSet(fromElement, true, toElement, false);
     }
 
     @Override
-    public SortedSet<E> headSet(E toElement) {
-        return subSetImpl(0, binSearch(toElement));
+    public ArraySet<E> headSet(E toElement) {
+        return headSet(toElement, false);
     }
 
     @Override
-    public SortedSet<E> tailSet(E fromElement) {
-        return subSetImpl(binSearch(fromElement), size());
+    public ArraySet<E> tailSet(E fromElement) {
+        return tailSet(fromElement, true);
+    }
+
+    private ArraySet<E> ascendingWindow(E low, boolean lowInclusive, E high, boolean highInclusive) {
+        int firstIndex = lowInclusive ? ceilingIndex(low) : higherIndex(low);
+        int lastIndex = highInclusive ? floorIndex(high) + 1 : lowerIndex(high) + 1;
+        return new ArraySet<>(array, firstIndex, Math.max(firstIndex, lastIndex), comparator, false, index);
     }
 
-    private SortedSet<E> subSetImpl(int firstIndex, int lastIndex) {
-        return new ArraySet<>(arraySet.subList(firstIndex, lastIndex), comparator());
+    private ArraySet<E> subSetImpl(int firstIndex, int lastIndex) {
+        return new ArraySet<>(array, firstIndex, Math.max(firstIndex, lastIndex), comparator, descending, index);
     }
 
     @Override
     public E first() {
-        return returnElementByIndex(0);
+        return returnElementByIndex(descending ? to - 1 : from);
     }
 
     @Override
     public E last() {
-        return returnElementByIndex(size() - 1);
+        return returnElementByIndex(descending ? from : to - 1);
     }
 
     private E returnElementByIndex(int index) {
-        if (arraySet.isEmpty()) {
+        if (isEmpty()) {
             throw new NoSuchElementException("ArraySet is empty");
         }
-        return arraySet.get(index);
+        return get(index);
     }
 
     @Override
     public boolean contains(Object o) {
         @SuppressWarnings("unchecked")
         E obj = (E) o;
-        return Collections.binarySearch(arraySet, obj, comparator()) >= 0;
+        return search(obj) >= 0;
     }
 
+    /**
+     * Returns the number of elements of this set that precede {@code e} in its order,
+     * that is the position {@code e} has or would have in iteration order.
+     */
     public int binSearch(E e) {
-        int index = Collections.binarySearch(arraySet, e, comparator());
-        return index >= 0 ? index : (-index) - 1;
+        return descending ? to - higherIndex(e) : ceilingIndex(e) - from;
+    }
+
+    /**
+     * Returns the element at the given position in iteration order.
+     */
+    private E at(int index) {
+        return get(descending ? to - 1 - index : from + index);
+    }
+
+    private boolean sameOrder(Collection<?> c) {
+        return c instanceof ArraySet<?> other && Objects.equals(comparator(), other.comparator());
+    }
+
+    /**
+     * Sizes are skewed enough for galloping to beat a linear merge.
+     */
+    private static boolean skewed(int small, int large) {
+        return (long) small * (32 - Integer.numberOfLeadingZeros(large)) < small + large;
+    }
+
+    /**
+     * Returns the first position not less than {@code index} whose element is not less than {@code key},
+     * probing positions {@code index, index + 1, index + 2, index + 4, index + 8, ...} before a binary search.
+     */
+    private int gallop(E key, int index) {
+        int size = size();
+        int step = 1;
+        int low = index;
+        int high = index;
+        while (high < size && compare(at(high), key) < 0) {
+            low = high + 1;
+            high = index + step;
+            step <<= 1;
+        }
+        high = Math.min(high, size);
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(at(middle), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private ArraySet<E> result(Object[] elements, int size) {
+        return new ArraySet<>(size < elements.length / 2 ? Arrays.copyOf(elements, size) : elements, 0, size, comparator(), false, null);
+    }
+
+    /**
+     * Returns a set of elements of both sets; of equal elements the one of this set is kept.
+     * Sets with the same order are merged in linear time.
+     */
+    public ArraySet<E> union(ArraySet<E> other) {
+        if (!sameOrder(other)) {
+            List<E> elements = new ArrayList<>(this);
+            elements.addAll(other);
+            return new ArraySet<>(elements, comparator());
+        }
+        Object[] elements = new Object[size() + other.size()];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size() && j < other.size()) {
+            int cmp = compare(at(i), other.at(j));
+            elements[size++] = cmp <= 0 ? at(i++) : other.at(j++);
+            if (cmp == 0) {
+                j++;
+            }
+        }
+        while (i < size()) {
+            elements[size++] = at(i++);
+        }
+        while (j < other.size()) {
+            elements[size++] = other.at(j++);
+        }
+        return result(elements, size);
+    }
+
+    /**
+     * Returns a set of elements of this set that the other one contains.
+     * Sets with the same order are merged, galloping through the larger one if sizes are skewed.
+     */
+    public ArraySet<E> intersection(ArraySet<E> other) {
+        boolean sameOrder = sameOrder(other);
+        Object[] elements = new Object[sameOrder ? Math.min(size(), other.size()) : size()];
+        int size = 0;
+        if (!sameOrder) {
+            for (E e : this) {
+                if (other.contains(e)) {
+                    elements[size++] = e;
+                }
+            }
+        } else if (skewed(size(), other.size())) {
+            for (int i = 0, j = 0; i < size() && j < other.size(); i++) {
+                j = other.gallop(at(i), j);
+                if (j < other.size() && compare(at(i), other.at(j)) == 0) {
+                    elements[size++] = at(i);
+                }
+            }
+        } else if (skewed(other.size(), size())) {
+            for (int i = 0, j = 0; i < size() && j < other.size(); j++) {
+                i = gallop(other.at(j), i);
+                if (i < size() && compare(at(i), other.at(j)) == 0) {
+                    elements[size++] = at(i);
+                }
+            }
+        } else {
+            int i = 0;
+            int j = 0;
+            while (i < size() && j < other.size()) {
+                int cmp = compare(at(i), other.at(j));
+                if (cmp < 0) {
+                    i++;
+                } else if (cmp > 0) {
+                    j++;
+                } else {
+                    elements[size++] = at(i++);
+                    j++;
+                }
+            }
+        }
+        return result(elements, size);
+    }
+
+    /**
+     * Returns a set of elements of this set that the other one does not contain.
+     */
+    public ArraySet<E> difference(ArraySet<E> other) {
+        Object[] elements = new Object[size()];
+        int size = 0;
+        if (!sameOrder(other) || skewed(size(), other.size())) {
+            for (E e : this) {
+                if (!other.contains(e)) {
+                    elements[size++] = e;
+                }
+            }
+        } else {
+            int j = 0;
+            for (int i = 0; i < size(); i++) {
+                while (j < other.size() && compare(other.at(j), at(i)) < 0) {
+                    j++;
+                }
+                if (j == other.size() || compare(other.at(j), at(i)) != 0) {
+                    elements[size++] = at(i);
+                }
+            }
+        }
+        return result(elements, size);
+    }
+
+    /**
+     * Looks up all keys in one sweep: the keys are sorted and the set is galloped through once.
+     *
+     * @return {@code result[i]} tells whether the set contains {@code keys.get(i)}
+     */
+    public boolean[] containsEach(List<? extends E> keys) {
+        Integer[] order = new Integer[keys.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compare(keys.get(a), keys.get(b)));
+        boolean[] result = new boolean[order.length];
+        int position = 0;
+        for (int i : order) {
+            E key = keys.get(i);
+            position = gallop(key, position);
+            result[i] = position < size() && compare(at(position), key) == 0;
+        }
+        return result;
+    }
+
+    /**
+     * An {@code ArraySet} with the same order is checked by a single merge.
+     */
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        if (!sameOrder(c)) {
+            return super.containsAll(c);
+        }
+        @SuppressWarnings("unchecked")
+        ArraySet<E> other = (ArraySet<E>) c;
+        if (other.size() > size()) {
+            return false;
+        }
+        for (int i = 0, j = 0; j < other.size(); i++, j++) {
+            i = gallop(other.at(j), i);
+            if (i == size() || compare(at(i), other.at(j)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Accumulates elements to add to a set and merges them in with a single pass on {@link #build()}.
+     */
+    public static class Builder<E> {
+        private final ArraySet<E> base;
+        private final List<E> added = new ArrayList<>();
+
+        public Builder(Comparator<? super E> comparator) {
+            this(new ArraySet<>(null, comparator));
+        }
+
+        public Builder(ArraySet<E> base) {
+            this.base = base;
+        }
+
+        public Builder<E> add(E e) {
+            added.add(e);
+            return this;
+        }
+
+        public Builder<E> addAll(Collection<? extends E> c) {
+            added.addAll(c);
+            return this;
+        }
+
+        /**
+         * Returns a set with the base and the added elements. The builder can be used further.
+         */
+        public ArraySet<E> build() {
+            if (added.isEmpty()) {
+                return base;
+            }
+            Object[] elements = added.toArray();
+            int size = sortUnique(elements, base.comparator());
+            return base.union(new ArraySet<>(elements, 0, size, base.comparator(), false, null));
+        }
     }
 }
@@ -0,0 +1,95 @@
+package info.kgeorgiy.ja.mikhailov.arrayset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares lookups in a plain {@link ArraySet}, an {@link ArraySet#indexed() indexed} one
+ * and batch lookups with {@link ArraySet#containsEach(List)}.
+ * <p>
+ * Usage: {@code ArraySetBenchmark [<size>...]}, 1M and 100M elements by default.
+ * 100M boxed elements need about 8 GiB of heap ({@code -Xmx8g}).
+ */
+public class ArraySetBenchmark {
+
+    private static final int[] DEFAULT_SIZES = {1_000_000, 100_000_000};
+    private static final int PROBES = 1_000_000;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) {
+        int[] sizes = DEFAULT_SIZES;
+        try {
+            if (args.length > 0) {
+                sizes = Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Sizes must be integers: " + e.getMessage());
+            return;
+        }
+        System.out.printf("%12s %10s %10s%n", "size", "lookup", "ns/probe");
+        for (int size : sizes) {
+            try {
+                run(size);
+            } catch (OutOfMemoryError e) {
+                System.err.printf("Not enough memory for %d elements, increase -Xmx%n", size);
+            }
+        }
+    }
+
+    private static void run(int size) {
+        final Random random = new Random(size);
+        final List<Integer> elements = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            elements.add(2 * i);
+        }
+        final ArraySet<Integer> plain = new ArraySet<>(elements);
+        elements.clear();
+        final ArraySet<Integer> indexed = plain.indexed();
+        final List<Integer> probes = new ArrayList<>(PROBES);
+        for (int i = 0; i < PROBES; i++) {
+            probes.add(random.nextInt(2 * size));
+        }
+        System.out.printf("%12d %10s %10.1f%n", size, "plain", measure(plain, probes));
+        System.out.printf("%12d %10s %10.1f%n", size, "indexed", measure(indexed, probes));
+        System.out.printf("%12d %10s %10.1f%n", size, "batch", measureBatch(plain, probes));
+    }
+
+    private static double measure(ArraySet<Integer> set, List<Integer> probes) {
+        long best = Long.MAX_VALUE;
+        int found = 0;
+        for (int run = 0; run < RUNS; run++) {
+            final long start = System.nanoTime();
+            for (Integer probe : probes) {
+                if (set.contains(probe)) {
+                    found++;
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return check(found, (double) best / probes.size());
+    }
+
+    private static double measureBatch(ArraySet<Integer> set, List<Integer> probes) {
+        long best = Long.MAX_VALUE;
+        int found = 0;
+        for (int run = 0; run < RUNS; run++) {
+            final long start = System.nanoTime();
+            for (boolean contains : set.containsEach(probes)) {
+                if (contains) {
+                    found++;
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return check(found, (double) best / probes.size());
+    }
+
+    /**
+     * Uses the lookup results, so that the loops are not optimized away.
+     */
+    private static double check(int found, double result) {
+        return found < 0 ? Double.NaN : result;
+    }
+}
@@ -0,0 +1,117 @@
+package info.kgeorgiy.ja.mikhailov.arrayset;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.UnaryOperator;
+
+/**
+ * Sorted set shared between threads: readers work lock-free with an immutable {@link ArraySet} snapshot,
+ * writers queue changes and {@link #publish()} applies them as one new snapshot.
+ * <p>
+ * A snapshot never changes, so a reader may keep using it (for example for a range query) while newer
+ * ones are published. Queued changes are invisible to readers until they are published, which is typically
+ * done by a single background thread.
+ */
+public class ConcurrentArraySet<E> {
+
+    private static final class Change<E> {
+        private final E element;
+        private final boolean add;
+
+        private Change(E element, boolean add) {
+            this.element = element;
+            this.add = add;
+        }
+    }
+
+    private final Queue<Change<E>> changes = new ConcurrentLinkedQueue<>();
+    private final Object publishLock = new Object();
+    private volatile ArraySet<E> snapshot;
+
+    public ConcurrentArraySet(Comparator<? super E> comparator) {
+        this(new ArraySet<>(null, comparator));
+    }
+
+    public ConcurrentArraySet(ArraySet<E> initial) {
+        this.snapshot = initial;
+    }
+
+    /**
+     * Returns the current snapshot. It is immutable and stays valid after newer snapshots are published.
+     */
+    public ArraySet<E> snapshot() {
+        return snapshot;
+    }
+
+    public boolean contains(Object o) {
+        return snapshot.contains(o);
+    }
+
+    public int size() {
+        return snapshot.size();
+    }
+
+    /**
+     * Queues adding the element; it becomes visible after the next {@link #publish()}.
+     */
+    public void add(E e) {
+        changes.add(new Change<>(e, true));
+    }
+
+    public void addAll(Collection<? extends E> c) {
+        for (E e : c) {
+            add(e);
+        }
+    }
+
+    /**
+     * Queues removing the element; it stays visible until the next {@link #publish()}.
+     */
+    public void remove(E e) {
+        changes.add(new Change<>(e, false));
+    }
+
+    /**
+     * Applies all queued changes in queue order and atomically replaces the snapshot.
+     * A change queued concurrently with the call goes either to this snapshot or to the next one.
+     *
+     * @return the published snapshot
+     */
+    public ArraySet<E> publish() {
+        synchronized (publishLock) {
+            if (changes.isEmpty()) {
+                return snapshot;
+            }
+            ArraySet<E> current = snapshot;
+            TreeMap<E, Boolean> last = new TreeMap<>(current.comparator());
+            Change<E> change;
+            while ((change = changes.poll()) != null) {
+                last.put(change.element, change.add);
+            }
+            ArraySet.Builder<E> added = new ArraySet.Builder<>(current.comparator());
+            ArraySet.Builder<E> removed = new ArraySet.Builder<>(current.comparator());
+            for (Map.Entry<E, Boolean> entry : last.entrySet()) {
+                (entry.getValue() ? added : removed).add(entry.getKey());
+            }
+            snapshot = current.difference(removed.build()).union(added.build());
+            return snapshot;
+        }
+    }
+
+    /**
+     * Atomically replaces the snapshot with {@code update(snapshot)}, after publishing queued changes.
+     */
+    public ArraySet<E> update(UnaryOperator<ArraySet<E>> update) {
+        synchronized (publishLock) {
+            snapshot = update.apply(publish());
+            return snapshot;
+        }
+    }
+
+    /**
+     * Returns whether there are changes that are not published yet.
+     */
+    public boolean hasPendingChanges() {
+        return !changes.isEmpty();
+    }
+}
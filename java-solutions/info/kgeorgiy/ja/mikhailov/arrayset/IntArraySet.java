@@ -0,0 +1,182 @@
+package info.kgeorgiy.ja.mikhailov.arrayset;
+
+import java.util.*;
+
+/**
+ * Immutable sorted set of {@code int} values backed by a sorted {@code int[]} without duplicates.
+ * <p>
+ * Lookups take primitive keys and never box. Floor and ceiling are answered with indices
+ * ({@code -1} if there is no such element) to be resolved by {@link #getInt(int)}.
+ * {@link #asSortedSet()} gives a {@link SortedSet} view for code expecting collections.
+ */
+public class IntArraySet {
+
+    private final int[] array;
+
+    public IntArraySet() {
+        this.array = new int[0];
+    }
+
+    /**
+     * Creates a set of the given values. The array is copied; a sorted one is not sorted again.
+     */
+    public IntArraySet(int[] values) {
+        int[] copy = values.clone();
+        for (int i = 1; i < copy.length; i++) {
+            if (copy[i - 1] > copy[i]) {
+                Arrays.sort(copy);
+                break;
+            }
+        }
+        int size = copy.length == 0 ? 0 : 1;
+        for (int i = 1; i < copy.length; i++) {
+            if (copy[size - 1] != copy[i]) {
+                copy[size++] = copy[i];
+            }
+        }
+        this.array = size == copy.length ? copy : Arrays.copyOf(copy, size);
+    }
+
+    public IntArraySet(Collection<Integer> collection) {
+        this(collection.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    public int size() {
+        return array.length;
+    }
+
+    public boolean isEmpty() {
+        return array.length == 0;
+    }
+
+    public int getInt(int index) {
+        return array[index];
+    }
+
+    public boolean contains(int key) {
+        return Arrays.binarySearch(array, key) >= 0;
+    }
+
+    private int ceilingIndex(int key, int from, int to) {
+        int index = Arrays.binarySearch(array, from, to, key);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Returns the index of the greatest element not greater than {@code key}, or {@code -1}.
+     */
+    public int floorIndex(int key) {
+        int index = Arrays.binarySearch(array, key);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Returns the index of the least element not less than {@code key}, or {@code -1}.
+     */
+    public int ceilingIndex(int key) {
+        int index = ceilingIndex(key, 0, array.length);
+        return index < array.length ? index : -1;
+    }
+
+    /**
+     * Returns the number of elements in {@code [fromInclusive, toExclusive)}.
+     */
+    public int rangeCount(int fromInclusive, int toExclusive) {
+        if (fromInclusive >= toExclusive) {
+            return 0;
+        }
+        int first = ceilingIndex(fromInclusive, 0, array.length);
+        return ceilingIndex(toExclusive, first, array.length) - first;
+    }
+
+    public int[] toArray() {
+        return array.clone();
+    }
+
+    /**
+     * Returns an unmodifiable {@link SortedSet} view of this set with natural ordering.
+     * Its subsets are views over the same array.
+     */
+    public SortedSet<Integer> asSortedSet() {
+        return new View(0, array.length);
+    }
+
+    private class View extends AbstractSet<Integer> implements SortedSet<Integer> {
+        private final int from;
+        private final int to;
+
+        private View(int from, int to) {
+            this.from = from;
+            this.to = Math.max(from, to);
+        }
+
+        @Override
+        public Iterator<Integer> iterator() {
+            return new Iterator<>() {
+                private int index = from;
+
+                @Override
+                public boolean hasNext() {
+                    return index < to;
+                }
+
+                @Override
+                public Integer next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return array[index++];
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Integer key && Arrays.binarySearch(array, from, to, key) >= 0;
+        }
+
+        @Override
+        public Comparator<? super Integer> comparator() {
+            return null;
+        }
+
+        @Override
+        public SortedSet<Integer> subSet(Integer fromElement, Integer toElement) {
+            if (fromElement > toElement) {
+                throw new IllegalArgumentException("fromElement > toElement");
+            }
+            return new View(ceilingIndex(fromElement, from, to), ceilingIndex(toElement, from, to));
+        }
+
+        @Override
+        public SortedSet<Integer> headSet(Integer toElement) {
+            return new View(from, ceilingIndex(toElement, from, to));
+        }
+
+        @Override
+        public SortedSet<Integer> tailSet(Integer fromElement) {
+            return new View(ceilingIndex(fromElement, from, to), to);
+        }
+
+        @Override
+        public Integer first() {
+            if (isEmpty()) {
+                throw new NoSuchElementException("Set is empty");
+            }
+            return array[from];
+        }
+
+        @Override
+        public Integer last() {
+            if (isEmpty()) {
+                throw new NoSuchElementException("Set is empty");
+            }
+            return array[to - 1];
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package info.kgeorgiy.ja.mikhailov.arrayset;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Immutable sorted set of {@code long} keys stored in a file and memory-mapped on {@link #open(Path)}.
+ * <p>
+ * The file is a 16-byte header (magic, version, count) followed by sorted unique keys in little-endian order.
+ * Opening only maps the file, so it takes constant time and the pages are shared through the page cache
+ * by every process that maps the same file. Lookups mirror {@link LongArraySet}.
+ */
+public class MappedLongSet {
+
+    private static final int MAGIC = 0x4c534554;
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+    private static final int SEGMENT_SHIFT = 27;
+    private static final long SEGMENT_KEYS = 1L << SEGMENT_SHIFT;
+    private static final int WRITE_BUFFER = 1 << 16;
+
+    private final MappedByteBuffer[] segments;
+    private final long size;
+
+    private MappedLongSet(MappedByteBuffer[] segments, long size) {
+        this.segments = segments;
+        this.size = size;
+    }
+
+    /**
+     * Writes the set to {@code file}, replacing it.
+     * The set is written to a temporary file that is atomically moved over {@code file},
+     * so processes that have the old file mapped keep reading it intact.
+     * The temporary file is created with the default permissions, so other users can map the result as before.
+     */
+    public static void write(Path file, LongArraySet set) throws IOException {
+        final Path temp = file.resolveSibling(file.getFileName() + "."
+                + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION).putLong(set.size());
+                for (int i = 0; i < set.size(); i++) {
+                    if (!buffer.hasRemaining()) {
+                        writeFully(channel, buffer);
+                    }
+                    buffer.putLong(set.getLong(i));
+                }
+                writeFully(channel, buffer);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Maps a file written by {@link #write(Path, LongArraySet)}.
+     *
+     * @throws IOException if the file cannot be mapped or is not a key set
+     */
+    public static MappedLongSet open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+            if (channel.size() < HEADER || channel.read(header, 0) < HEADER) {
+                throw new IOException("Not a key set file: " + file);
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a key set file: " + file);
+            }
+            long size = header.getLong();
+            if (size < 0 || channel.size() != HEADER + size * Long.BYTES) {
+                throw new IOException("Key set file is truncated: " + file);
+            }
+            MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_KEYS - 1) / SEGMENT_KEYS)];
+            for (int i = 0; i < segments.length; i++) {
+                long keys = Math.min(SEGMENT_KEYS, size - i * SEGMENT_KEYS);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, HEADER + i * SEGMENT_KEYS * Long.BYTES, keys * Long.BYTES);
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new MappedLongSet(segments, size);
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getLong(long index) {
+        return segments[(int) (index >>> SEGMENT_SHIFT)].getLong((int) (index & (SEGMENT_KEYS - 1)) * Long.BYTES);
+    }
+
+    /**
+     * Searches {@code [from, to)} as {@link Arrays#binarySearch(long[], long)} does.
+     */
+    private long search(long key, long from, long to) {
+        long low = from;
+        long high = to - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            long value = getLong(middle);
+            if (value < key) {
+                low = middle + 1;
+            } else if (value > key) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private long ceilingIndex(long key, long from, long to) {
+        long index = search(key, from, to);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    public boolean contains(long key) {
+        return search(key, 0, size) >= 0;
+    }
+
+    /**
+     * Returns the index of the greatest key not greater than {@code key}, or {@code -1}.
+     */
+    public long floorIndex(long key) {
+        long index = search(key, 0, size);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Returns the index of the least key not less than {@code key}, or {@code -1}.
+     */
+    public long ceilingIndex(long key) {
+        long index = ceilingIndex(key, 0, size);
+        return index < size ? index : -1;
+    }
+
+    /**
+     * Returns the number of keys in {@code [fromInclusive, toExclusive)}.
+     */
+    public long rangeCount(long fromInclusive, long toExclusive) {
+        if (fromInclusive >= toExclusive) {
+            return 0;
+        }
+        long first = ceilingIndex(fromInclusive, 0, size);
+        return ceilingIndex(toExclusive, first, size) - first;
+    }
+
+    /**
+     * Returns an unmodifiable {@link SortedSet} view of the keys with natural ordering.
+     * Its subsets are views over the same mapping.
+     */
+    public SortedSet<Long> asSortedSet() {
+        return new View(0, size);
+    }
+
+    private class View extends AbstractSet<Long> implements SortedSet<Long> {
+        private final long from;
+        private final long to;
+
+        private View(long from, long to) {
+            this.from = from;
+            this.to = Math.max(from, to);
+        }
+
+        @Override
+        public Iterator<Long> iterator() {
+            return new Iterator<>() {
+                private long index = from;
+
+                @Override
+                public boolean hasNext() {
+                    return index < to;
+                }
+
+                @Override
+                public Long next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return getLong(index++);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return (int) Math.min(Integer.MAX_VALUE, to - from);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Long key && search(key, from, to) >= 0;
+        }
+
+        @Override
+        public Comparator<? super Long> comparator() {
+            return null;
+        }
+
+        @Override
+        public SortedSet<Long> subSet(Long fromElement, Long toElement) {
+            if (fromElement > toElement) {
+                throw new IllegalArgumentException("fromElement > toElement");
+            }
+            return new View(ceilingIndex(fromElement, from, to), ceilingIndex(toElement, from, to));
+        }
+
+        @Override
+        public SortedSet<Long> headSet(Long toElement) {
+            return new View(from, ceilingIndex(toElement, from, to));
+        }
+
+        @Override
+        public SortedSet<Long> tailSet(Long fromElement) {
+            return new View(ceilingIndex(fromElement, from, to), to);
+        }
+
+        @Override
+        public Long first() {
+            if (isEmpty()) {
+                throw new NoSuchElementException("Set is empty");
+            }
+            return getLong(from);
+        }
+
+        @Override
+        public Long last() {
+            if (isEmpty()) {
+                throw new NoSuchElementException("Set is empty");
+            }
+            return getLong(to - 1);
+        }
+    }
+}
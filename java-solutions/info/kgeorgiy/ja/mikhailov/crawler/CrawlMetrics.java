@@ -0,0 +1,217 @@
+package info.kgeorgiy.ja.mikhailov.crawler;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Counters of a {@link WebCrawler} since its creation: pages and errors by exception type,
+ * queue depths of the download and extraction executors and, per host, downloads in flight, parked downloads,
+ * time parked waiting for a host slot and a log2 histogram of download latencies.
+ * Hosts left idle by a finished crawl are dropped and their counters are added up in {@link #finishedHosts()}.
+ * <p>
+ * Recording is a few atomic increments per page, so the metrics are always on.
+ * {@link #startDump(long, TimeUnit)} prints a progress line to stderr periodically
+ * and {@link #summary()} gives all numbers as a JSON object.
+ */
+public class CrawlMetrics {
+
+    static final int BUCKETS = 40;
+
+    /**
+     * Snapshot of one host. {@code latencies[i]} counts downloads that took less than {@code 2^i} microseconds.
+     */
+    public record HostStatistics(int inFlight, int parked, long slotWaitNanos, long[] latencies) {
+        public long downloads() {
+            return Arrays.stream(latencies).sum();
+        }
+    }
+
+    private final long start = System.nanoTime();
+    private final LongAdder pages = new LongAdder();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final Map<String, Host> hosts;
+    private final IntSupplier loadQueue;
+    private final IntSupplier extractQueue;
+    private int finishedHosts;
+    private long finishedSlotWaitNanos;
+    private final long[] finishedLatencies = new long[BUCKETS];
+    private ScheduledExecutorService dump;
+
+    CrawlMetrics(Map<String, Host> hosts, IntSupplier loadQueue, IntSupplier extractQueue) {
+        this.hosts = hosts;
+        this.loadQueue = loadQueue;
+        this.extractQueue = extractQueue;
+    }
+
+    static int bucket(long nanos) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos / 1000));
+    }
+
+    void page() {
+        pages.increment();
+    }
+
+    void error(Exception e) {
+        errors.computeIfAbsent(e.getClass().getName(), name -> new LongAdder()).increment();
+    }
+
+    public long pages() {
+        return pages.sum();
+    }
+
+    public double pagesPerSecond() {
+        return pages.sum() / ((System.nanoTime() - start) / 1e9);
+    }
+
+    public long errors() {
+        return errors.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public Map<String, Long> errorsByType() {
+        final Map<String, Long> counts = new TreeMap<>();
+        errors.forEach((type, count) -> counts.put(type, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Returns the number of downloads waiting for a thread, or for a permit in {@link WebCrawler.Mode#VIRTUAL} mode.
+     */
+    public int loadQueue() {
+        return loadQueue.getAsInt();
+    }
+
+    public int extractQueue() {
+        return extractQueue.getAsInt();
+    }
+
+    public Map<String, HostStatistics> hosts() {
+        final Map<String, HostStatistics> statistics = new TreeMap<>();
+        hosts.forEach((name, host) -> statistics.put(name,
+                new HostStatistics(host.active(), host.parked(), host.slotWaitNanos(), host.latencies())));
+        return statistics;
+    }
+
+    /**
+     * Adds the counters of a dropped host to {@link #finishedHosts()}.
+     */
+    synchronized void retire(Host host) {
+        finishedHosts++;
+        finishedSlotWaitNanos += host.slotWaitNanos();
+        final long[] latencies = host.latencies();
+        for (int i = 0; i < BUCKETS; i++) {
+            finishedLatencies[i] += latencies[i];
+        }
+    }
+
+    /**
+     * Returns the number of hosts dropped after their crawls finished.
+     */
+    public synchronized int finishedHostCount() {
+        return finishedHosts;
+    }
+
+    /**
+     * Returns the counters of all hosts dropped after their crawls finished, added up.
+     */
+    public synchronized HostStatistics finishedHosts() {
+        return new HostStatistics(0, 0, finishedSlotWaitNanos, finishedLatencies.clone());
+    }
+
+    /**
+     * Prints {@link #progressLine()} to stderr every {@code period} until the crawler is closed.
+     */
+    public synchronized void startDump(long period, TimeUnit unit) {
+        if (dump == null) {
+            dump = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "crawler-metrics");
+                thread.setDaemon(true);
+                return thread;
+            });
+            dump.scheduleAtFixedRate(() -> System.err.println(progressLine()), period, period, unit);
+        }
+    }
+
+    synchronized void close() {
+        if (dump != null) {
+            dump.shutdownNow();
+        }
+    }
+
+    public String progressLine() {
+        int inFlight = 0;
+        int parked = 0;
+        for (Host host : hosts.values()) {
+            inFlight += host.active();
+            parked += host.parked();
+        }
+        return String.format("Progress: %d pages, %d errors, %.1f pages/s, queues %d load / %d extract, %d in flight, %d parked",
+                pages(), errors(), pagesPerSecond(), loadQueue(), extractQueue(), inFlight, parked);
+    }
+
+    public String summary() {
+        final StringBuilder sb = new StringBuilder("{");
+        sb.append("\"pages\":").append(pages())
+                .append(",\"pagesPerSecond\":").append(pagesPerSecond())
+                .append(",\"loadQueue\":").append(loadQueue())
+                .append(",\"extractQueue\":").append(extractQueue())
+                .append(",\"errors\":{");
+        String separator = "";
+        for (Map.Entry<String, Long> entry : errorsByType().entrySet()) {
+            sb.append(separator);
+            appendString(sb, entry.getKey());
+            sb.append(':').append(entry.getValue());
+            separator = ",";
+        }
+        sb.append("},\"hosts\":{");
+        separator = "";
+        for (Map.Entry<String, HostStatistics> entry : hosts().entrySet()) {
+            sb.append(separator);
+            appendString(sb, entry.getKey());
+            sb.append(':');
+            appendHost(sb, entry.getValue());
+            separator = ",";
+        }
+        sb.append("},\"finishedHosts\":").append(finishedHostCount())
+                .append(",\"finished\":");
+        appendHost(sb, finishedHosts());
+        return sb.append('}').toString();
+    }
+
+    private static void appendHost(StringBuilder sb, HostStatistics host) {
+        sb.append("{\"downloads\":").append(host.downloads())
+                .append(",\"inFlight\":").append(host.inFlight())
+                .append(",\"parked\":").append(host.parked())
+                .append(",\"slotWaitSeconds\":").append(host.slotWaitNanos() / 1e9)
+                .append(",\"latencyMicrosUpTo\":{");
+        String separator = "";
+        for (int i = 0; i < BUCKETS; i++) {
+            if (host.latencies()[i] > 0) {
+                sb.append(separator).append('"').append(1L << i).append("\":").append(host.latencies()[i]);
+                separator = ",";
+            }
+        }
+        sb.append("}}");
+    }
+
+    private static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,118 @@
+package info.kgeorgiy.ja.mikhailov.crawler;
+
+import info.kgeorgiy.java.advanced.crawler.Document;
+import info.kgeorgiy.java.advanced.crawler.Downloader;
+import info.kgeorgiy.java.advanced.crawler.Result;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares {@link WebCrawler.Mode#POOLED} and {@link WebCrawler.Mode#VIRTUAL} crawls of a synthetic site
+ * served by a {@link Downloader} stub that sleeps for a fixed latency on every page.
+ * Prints pages per second, peak platform thread count and peak used heap for every {@code downloads} value.
+ * <p>
+ * Usage: {@code CrawlerBenchmark [<latency ms> [<downloads>...]]}, 50 ms and 16, 64, 256, 1024 by default.
+ */
+public class CrawlerBenchmark {
+
+    private static final int FANOUT = 8;
+    private static final int DEPTH = 5;
+    private static final int HOSTS = 16;
+    private static final int EXTRACTORS = 4;
+    private static final long SAMPLE_MILLIS = 10;
+
+    public static void main(String[] args) {
+        long latency = 50;
+        final List<Integer> downloads = new ArrayList<>();
+        try {
+            if (args.length > 0) {
+                latency = Long.parseLong(args[0]);
+            }
+            for (int i = 1; i < args.length; i++) {
+                downloads.add(Integer.parseInt(args[i]));
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Arguments must be integer: " + e.getMessage());
+            return;
+        }
+        if (downloads.isEmpty()) {
+            downloads.addAll(List.of(16, 64, 256, 1024));
+        }
+        final Downloader downloader = new SleepingDownloader(latency);
+        System.out.println("Latency " + latency + " ms");
+        System.out.printf("%10s %8s %8s %10s %10s %12s%n", "downloads", "mode", "pages", "pages/s", "threads", "heap, MiB");
+        for (int count : downloads) {
+            for (WebCrawler.Mode mode : WebCrawler.Mode.values()) {
+                run(downloader, count, mode);
+            }
+        }
+    }
+
+    private static void run(Downloader downloader, int downloads, WebCrawler.Mode mode) {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        threads.resetPeakThreadCount();
+        final AtomicLong heap = new AtomicLong();
+        final Thread sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                heap.accumulateAndGet(runtime.totalMemory() - runtime.freeMemory(), Math::max);
+                try {
+                    Thread.sleep(SAMPLE_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+        final long start = System.nanoTime();
+        final Result result;
+        try (WebCrawler crawler = new WebCrawler(downloader, downloads, EXTRACTORS, Integer.MAX_VALUE, mode)) {
+            result = crawler.download(url(0), DEPTH);
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        sampler.interrupt();
+        final int pages = result.getDownloaded().size();
+        System.out.printf("%10d %8s %8d %10.1f %10d %12.1f%n", downloads, mode, pages, pages / seconds,
+                threads.getPeakThreadCount(), heap.get() / (1024.0 * 1024));
+    }
+
+    private static String url(int page) {
+        return "http://host" + page % HOSTS + ".bench/" + page;
+    }
+
+    /**
+     * Page {@code n} links to pages {@code n * FANOUT + 1 .. n * FANOUT + FANOUT}.
+     */
+    private static final class SleepingDownloader implements Downloader {
+        private final long latency;
+
+        SleepingDownloader(long latency) {
+            this.latency = latency;
+        }
+
+        @Override
+        public Document download(String url) throws IOException {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted: " + url);
+            }
+            final int page = Integer.parseInt(url.substring(url.lastIndexOf('/') + 1));
+            return () -> {
+                final List<String> links = new ArrayList<>(FANOUT);
+                for (int i = 1; i <= FANOUT; i++) {
+                    links.add(url(page * FANOUT + i));
+                }
+                return links;
+            };
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package info.kgeorgiy.ja.mikhailov.crawler;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Concurrent map from 64-bit URL fingerprints to non-zero {@code int} values.
+ * <p>
+ * Keys and values live in primitive open-addressing arrays split into independently locked segments,
+ * so an entry takes 12 bytes plus free slots instead of a string, a node and a boxed value.
+ * Two URLs with the same fingerprint are indistinguishable, which for 64-bit fingerprints
+ * happens with probability about {@code n^2 / 2^65}.
+ */
+final class FingerprintTable {
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int INITIAL_CAPACITY = 1 << 8;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    FingerprintTable() {
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Returns a well-mixed non-zero fingerprint of the URL: FNV-1a over its chars followed by a murmur finalizer.
+     */
+    static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash = (hash ^ url.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash == 0 ? 1 : hash;
+    }
+
+    private Segment segment(long key) {
+        return segments[(int) (key >>> (Long.SIZE - SEGMENT_BITS))];
+    }
+
+    /**
+     * Returns the value of the key or {@code 0} if it is absent.
+     */
+    int get(long key) {
+        final Segment segment = segment(key);
+        synchronized (segment) {
+            return segment.values[segment.slot(key)];
+        }
+    }
+
+    /**
+     * Replaces the value of the key with {@code update.applyAsInt(old)}, where {@code old} is {@code 0} for absent keys,
+     * and returns the old value. The update runs under the segment lock and must return a non-zero value.
+     */
+    int update(long key, IntUnaryOperator update) {
+        final Segment segment = segment(key);
+        synchronized (segment) {
+            int slot = segment.slot(key);
+            final int old = segment.values[slot];
+            final int value = update.applyAsInt(old);
+            if (value != old) {
+                if (old == 0) {
+                    if (segment.grow()) {
+                        slot = segment.slot(key);
+                    }
+                    segment.keys[slot] = key;
+                    segment.size++;
+                }
+                segment.values[slot] = value;
+            }
+            return old;
+        }
+    }
+
+    private static final class Segment {
+        private long[] keys = new long[INITIAL_CAPACITY];
+        private int[] values = new int[INITIAL_CAPACITY];
+        private int size;
+
+        /**
+         * Returns the slot of the key or the free slot where it would be inserted.
+         */
+        int slot(long key) {
+            final int mask = keys.length - 1;
+            int slot = (int) key & mask;
+            while (keys[slot] != 0 && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        /**
+         * Keeps the load factor at most 3/4, returns whether the arrays were rehashed.
+         */
+        boolean grow() {
+            if (4 * (size + 1) <= 3 * keys.length) {
+                return false;
+            }
+            final long[] oldKeys = keys;
+            final int[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new int[oldValues.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    final int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+            return true;
+        }
+    }
+}
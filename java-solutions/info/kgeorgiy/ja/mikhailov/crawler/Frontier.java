@@ -0,0 +1,127 @@
+package info.kgeorgiy.ja.mikhailov.crawler;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+
+/**
+ * FIFO queue of URLs waiting for download, together with their remaining depth.
+ * <p>
+ * At most {@code limit} entries are kept in memory. Once the limit is reached, further entries are appended to a
+ * temporary file and read back in batches as the memory part drains. If the file cannot be written,
+ * the queue keeps everything in memory.
+ */
+final class Frontier implements Closeable {
+
+    record Entry(String url, int depth) {
+    }
+
+    private final int limit;
+    private final ArrayDeque<Entry> memory = new ArrayDeque<>();
+    private Path file;
+    private DataOutputStream writer;
+    private DataInputStream reader;
+    private long spilled;
+    private boolean spillable = true;
+
+    Frontier(int limit) {
+        this.limit = limit;
+    }
+
+    synchronized void add(String url, int depth) {
+        if (spillable && (spilled > 0 || memory.size() >= limit)) {
+            try {
+                spill(url, depth);
+                return;
+            } catch (IOException e) {
+                System.err.println("Cannot spill crawl frontier to disk, keeping it in memory: " + e.getMessage());
+                spillable = false;
+            }
+        }
+        memory.add(new Entry(url, depth));
+    }
+
+    private void spill(String url, int depth) throws IOException {
+        if (writer == null) {
+            file = Files.createTempFile("crawler", ".frontier");
+            writer = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        }
+        final byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        writer.writeInt(bytes.length);
+        writer.write(bytes);
+        writer.writeInt(depth);
+        spilled++;
+    }
+
+    /**
+     * Puts a polled entry back, so it is returned first again.
+     */
+    synchronized void addFirst(Entry entry) {
+        memory.addFirst(entry);
+    }
+
+    synchronized boolean isEmpty() {
+        return memory.isEmpty() && spilled == 0;
+    }
+
+    /**
+     * Returns the oldest entry or {@code null} if the queue is empty.
+     */
+    synchronized Entry poll() {
+        if (memory.isEmpty() && spilled > 0) {
+            try {
+                refill();
+            } catch (IOException e) {
+                System.err.println("Cannot read crawl frontier back, " + spilled + " URLs are lost: " + e.getMessage());
+                spilled = 0;
+                spillable = false;
+                deleteFile();
+            }
+        }
+        return memory.poll();
+    }
+
+    private void refill() throws IOException {
+        writer.flush();
+        if (reader == null) {
+            reader = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        }
+        while (spilled > 0 && memory.size() < limit) {
+            final byte[] bytes = new byte[reader.readInt()];
+            reader.readFully(bytes);
+            memory.add(new Entry(new String(bytes, StandardCharsets.UTF_8), reader.readInt()));
+            spilled--;
+        }
+        if (spilled == 0) {
+            deleteFile();
+        }
+    }
+
+    private void deleteFile() {
+        try {
+            if (reader != null) {
+                reader.close();
+            }
+            if (writer != null) {
+                writer.close();
+            }
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot delete crawl frontier file: " + e.getMessage());
+        }
+        reader = null;
+        writer = null;
+        file = null;
+    }
+
+    @Override
+    public synchronized void close() {
+        memory.clear();
+        spilled = 0;
+        deleteFile();
+    }
+}
@@ -0,0 +1,117 @@
+package info.kgeorgiy.ja.mikhailov.crawler;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Runs at most {@code perHost} tasks of one host at a time.
+ * Further tasks are parked in a queue and submitted as running ones finish, so no worker thread waits for a slot.
+ * <p>
+ * Also keeps the host counters reported by {@link CrawlMetrics}. The latency histogram is allocated
+ * on the first download, so a host costs little until it is crawled.
+ */
+final class Host {
+
+    private record Parked(Runnable task, long since) {
+    }
+
+    private final int perHost;
+    private final Executor executor;
+    private final Queue<Parked> pending = new ArrayDeque<>();
+    private int active;
+    private boolean retired;
+    private long slotWaitNanos;
+    private volatile AtomicLongArray latencies;
+
+    Host(int perHost, Executor executor) {
+        this.perHost = perHost;
+        this.executor = executor;
+    }
+
+    /**
+     * Runs or parks the task. Returns {@code false} if the host is {@link #retire() retired}.
+     */
+    boolean submit(Runnable task) {
+        synchronized (this) {
+            if (retired) {
+                return false;
+            }
+            if (active >= perHost) {
+                pending.add(new Parked(task, System.nanoTime()));
+                return true;
+            }
+            active++;
+        }
+        executor.execute(() -> run(task));
+        return true;
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } finally {
+            final Parked next;
+            synchronized (this) {
+                next = pending.poll();
+                if (next == null) {
+                    active--;
+                } else {
+                    slotWaitNanos += System.nanoTime() - next.since();
+                }
+            }
+            if (next != null) {
+                executor.execute(() -> run(next.task()));
+            }
+        }
+    }
+
+    /**
+     * Makes an idle host refuse further tasks, so it can be dropped.
+     * Returns {@code false} if it is busy or already retired.
+     */
+    synchronized boolean retire() {
+        if (retired || active > 0 || !pending.isEmpty()) {
+            return false;
+        }
+        retired = true;
+        return true;
+    }
+
+    void downloaded(long nanos) {
+        AtomicLongArray latencies = this.latencies;
+        if (latencies == null) {
+            synchronized (this) {
+                if (this.latencies == null) {
+                    this.latencies = new AtomicLongArray(CrawlMetrics.BUCKETS);
+                }
+                latencies = this.latencies;
+            }
+        }
+        latencies.incrementAndGet(CrawlMetrics.bucket(nanos));
+    }
+
+    synchronized int active() {
+        return active;
+    }
+
+    synchronized int parked() {
+        return pending.size();
+    }
+
+    synchronized long slotWaitNanos() {
+        return slotWaitNanos;
+    }
+
+    long[] latencies() {
+        final long[] counts = new long[CrawlMetrics.BUCKETS];
+        final AtomicLongArray latencies = this.latencies;
+        if (latencies != null) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = latencies.get(i);
+            }
+        }
+        return counts;
+    }
+}
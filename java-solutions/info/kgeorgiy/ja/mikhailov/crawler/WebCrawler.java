@@ -3,71 +3,453 @@ package info.kgeorgiy.ja.mikhailov.crawler;
 import info.kgeorgiy.java.advanced.crawler.*;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
+/**
+ * Downloads of one host are limited to {@code perHost} at a time, see {@link Host}.
+ * Hosts are dropped once no crawl uses them, so they do not pile up across {@link #download(String, int)} calls.
+ * <p>
+ * In {@link Mode#VIRTUAL} mode every download runs on its own virtual thread and {@code downloads} is enforced
+ * by a semaphore, so a slow download only holds a permit. Extraction always runs on a fixed pool of {@code extractors}
+ * threads.
+ */
 public class WebCrawler implements Crawler {
 
+    /**
+     * How download tasks are executed.
+     */
+    public enum Mode {
+        /** Fixed pool of {@code downloads} threads. */
+        POOLED,
+        /** Virtual thread per download, at most {@code downloads} of them downloading at once. */
+        VIRTUAL
+    }
+
+    /**
+     * URLs kept in memory by the frontier of one crawl, the rest are spilled to disk.
+     */
+    private static final int FRONTIER_MEMORY = 1 << 16;
+    /**
+     * URLs handed to the hosts per download slot, bounding the memory of parked host queues.
+     */
+    private static final int ADMISSION = 64;
+    /**
+     * URLs of one host handed to it beyond its {@code perHost} slots, so a finished download is followed at once.
+     */
+    private static final int PARKED = 2;
+
     final private Downloader downloader;
     final private ExecutorService load;
     final private ExecutorService extract;
+    final private Semaphore permits;
+    final private int perHost;
+    final private int admission;
+    final private Map<String, Host> hosts = new ConcurrentHashMap<>();
+    final private CrawlMetrics metrics;
 
     public WebCrawler(final Downloader downloader, final int downloads, final int extractors, final int perHost) {
+        this(downloader, downloads, extractors, perHost, Mode.POOLED);
+    }
+
+    public WebCrawler(final Downloader downloader, final int downloads, final int extractors, final int perHost, final Mode mode) {
         this.downloader = downloader;
-        load = Executors.newFixedThreadPool(downloads);
+        this.perHost = perHost;
+        this.admission = downloads * ADMISSION;
+        if (mode == Mode.VIRTUAL) {
+            load = Executors.newVirtualThreadPerTaskExecutor();
+            permits = new Semaphore(downloads);
+        } else {
+            load = Executors.newFixedThreadPool(downloads);
+            permits = null;
+        }
         extract = Executors.newFixedThreadPool(extractors);
+        metrics = new CrawlMetrics(hosts,
+                permits != null ? permits::getQueueLength : () -> ((ThreadPoolExecutor) load).getQueue().size(),
+                () -> ((ThreadPoolExecutor) extract).getQueue().size());
     }
 
+    /**
+     * Returns the counters of all crawls made by this crawler.
+     */
+    public CrawlMetrics metrics() {
+        return metrics;
+    }
 
     @Override
     public Result download(String url, int depth) {
-        final Set<String> downloaded = ConcurrentHashMap.newKeySet();
-        final Map<String, IOException> exception = new ConcurrentHashMap<>();
-        final Set<String> used = ConcurrentHashMap.newKeySet();
-        Queue<String> queue = new ConcurrentLinkedDeque<>();
-        queue.add(url);
-        for (int i = depth; i >= 1; i--) {
-            Phaser phaser = new Phaser(1);
-            while (!queue.isEmpty()) {
-                phaser.register();
-                final String link = queue.poll();
-                load.submit(() -> downloadTasks(downloaded, exception, used, link, depth, phaser));
-            }
-            phaser.arriveAndAwaitAdvance();
-            queue.addAll(used);
-            used.clear();
-        }
-        return new Result(new ArrayList<>(downloaded), exception);
+        return new Traversal().run(url, depth);
     }
 
-    private void downloadTasks(Set<String> downloaded, Map<String, IOException> exception, Set<String> used, String url, int depth, Phaser phaser) {
-        if (!exception.containsKey(url) && downloaded.add(url)) {
+    /**
+     * One barrier-free crawl. Every page carries the greatest remaining depth it was found with,
+     * links are scheduled as soon as they are extracted and the crawl ends when no task is outstanding.
+     * <p>
+     * A page found again with a greater depth is upgraded: if it has not been extracted yet it is extracted with
+     * the new depth, otherwise its links are extracted again. So every page ends up with its shallowest depth,
+     * exactly as in a level-by-level crawl.
+     * <p>
+     * Pages are tracked by {@link FingerprintTable fingerprints} of their URLs with the depth and state packed into
+     * one {@code int}, and URLs waiting for download are kept in a {@link Frontier} that spills to disk. At most
+     * {@code downloads * ADMISSION} of them are handed to the hosts at once, and at most {@code perHost + PARKED}
+     * to one host. Further URLs of such a host are set aside and handed over as its downloads finish, so a long run
+     * of one host in the frontier does not keep the others waiting. At most {@code FRONTIER_MEMORY} URLs are set
+     * aside, beyond that the frontier waits for them.
+     * <p>
+     * The document of a finished page is only
+     * kept while an unfinished page at least two levels shallower exists, since only such a page can upgrade it.
+     * Depths are limited to {@code MAX_DEPTH}.
+     */
+    private final class Traversal {
+        private static final int QUEUED = 0;
+        private static final int EXTRACTING = 1;
+        private static final int DONE = 2;
+        private static final int FAILED = 3;
+        private static final int HOPS = 1 << 12;
+        /**
+         * Depth and state share an {@code int}, two bits of it are the state.
+         */
+        private static final int MAX_DEPTH = (1 << 30) - 1;
+
+        private final FingerprintTable pages = new FingerprintTable();
+        private final Frontier frontier = new Frontier(FRONTIER_MEMORY);
+        private final Map<Integer, Map<Long, Document>> retained = new ConcurrentHashMap<>();
+        private final AtomicIntegerArray unfinished = new AtomicIntegerArray(HOPS + 1);
+        private final AtomicInteger admitted = new AtomicInteger();
+        private final Map<String, Share> shares = new HashMap<>();
+        private final Queue<Share> ready = new ArrayDeque<>();
+        private int deferred;
+        private final Queue<String> downloaded = new ConcurrentLinkedQueue<>();
+        private final Map<String, IOException> exception = new ConcurrentHashMap<>();
+        private final AtomicInteger outstanding = new AtomicInteger(1);
+        private final CountDownLatch done = new CountDownLatch(1);
+        private int depth;
+        private volatile int minHops;
+
+        Result run(String url, int depth) {
+            if (depth > MAX_DEPTH) {
+                throw new IllegalArgumentException("Depth must be at most " + MAX_DEPTH + ": " + depth);
+            }
+            this.depth = depth;
+            visit(url, depth);
+            finish();
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            frontier.close();
+            retireIdleHosts();
+            return new Result(new ArrayList<>(downloaded), exception);
+        }
+
+        private void finish() {
+            if (outstanding.decrementAndGet() == 0) {
+                done.countDown();
+            }
+        }
+
+        private Runnable task(Runnable task) {
+            outstanding.incrementAndGet();
+            return () -> {
+                try {
+                    task.run();
+                } finally {
+                    finish();
+                }
+            };
+        }
+
+        private static int state(int depth, int state) {
+            return depth << 2 | state;
+        }
+
+        private static int depthOf(int state) {
+            return state >>> 2;
+        }
+
+        private static int stateOf(int state) {
+            return state & 3;
+        }
+
+        /**
+         * Distance from the start page, pages further than {@code HOPS} share the last counter.
+         */
+        private int hops(int depth) {
+            return this.depth - depth;
+        }
+
+        /**
+         * Called under the lock of the page entry.
+         */
+        private void count(int depth, int delta) {
+            if (unfinished.addAndGet(Math.min(hops(depth), HOPS), delta) == 0 && hops(depth) <= minHops) {
+                release();
+            }
+        }
+
+        /**
+         * New and upgraded pages are always deeper than the unfinished page that found them,
+         * so the minimum only grows and the scan may start from the previous one.
+         */
+        private int minUnfinishedHops() {
+            int hops = minHops;
+            while (hops <= HOPS && unfinished.get(hops) == 0) {
+                hops++;
+            }
+            if (hops > HOPS) {
+                return Integer.MAX_VALUE - 2;
+            }
+            minHops = hops;
+            return hops;
+        }
+
+        /**
+         * Drops retained documents level by level, so the cost depends on the number of levels, not pages.
+         */
+        private void release() {
+            final int hops = minUnfinishedHops();
+            retained.keySet().removeIf(level -> level < hops + 2);
+        }
+
+        private void retain(long fingerprint, Document document, int depth) {
+            if (hops(depth) >= minUnfinishedHops() + 2) {
+                retained.computeIfAbsent(hops(depth), level -> new ConcurrentHashMap<>()).put(fingerprint, document);
+            }
+        }
+
+        private void visit(String url, int depth) {
+            if (depth < 1) {
+                return;
+            }
+            final long fingerprint = FingerprintTable.fingerprint(url);
+            final int old = pages.update(fingerprint, value -> {
+                if (value == 0) {
+                    count(depth, 1);
+                    return state(depth, QUEUED);
+                }
+                if (depth <= depthOf(value) || stateOf(value) == FAILED) {
+                    return value;
+                }
+                if (stateOf(value) == DONE) {
+                    count(depth, 1);
+                    return state(depth, EXTRACTING);
+                }
+                count(depth, 1);
+                count(depthOf(value), -1);
+                return state(depth, stateOf(value));
+            });
+            if (old == 0) {
+                outstanding.incrementAndGet();
+                frontier.add(url, depth);
+                pump();
+            } else if (stateOf(old) == DONE && depth > depthOf(old)) {
+                final Map<Long, Document> level = retained.get(hops(depthOf(old)));
+                final Document document = level == null ? null : level.get(fingerprint);
+                if (document != null) {
+                    extract.execute(task(() -> process(fingerprint, document, depth)));
+                }
+            }
+        }
+
+        private void fail(long fingerprint) {
+            pages.update(fingerprint, value -> {
+                count(depthOf(value), -1);
+                return state(depthOf(value), FAILED);
+            });
+        }
+
+        /**
+         * URLs of one host handed to it by this crawl and the ones set aside until it has room.
+         */
+        private final class Share {
+            private final String name;
+            private final Queue<Frontier.Entry> waiting = new ArrayDeque<>();
+            private int admitted;
+            private boolean queued;
+
+            private Share(String name) {
+                this.name = name;
+            }
+
+            private boolean full() {
+                return admitted >= perHost + PARKED;
+            }
+        }
+
+        /**
+         * Hands URLs to their hosts while fewer than the admission limit are there,
+         * set-aside ones of hosts that got room first.
+         */
+        private void pump() {
+            if (admitted.get() >= admission) {
+                return;
+            }
+            synchronized (this) {
+                while (admitted.get() < admission) {
+                    final Share share = ready.poll();
+                    if (share != null) {
+                        deferred--;
+                        admit(share, share.waiting.poll());
+                        share.queued = false;
+                        enqueue(share);
+                    } else if (!take()) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Takes one URL from the frontier and hands it to its host or sets it aside.
+         * Returns {@code false} if nothing can be taken.
+         */
+        private boolean take() {
+            final Frontier.Entry entry = frontier.poll();
+            if (entry == null) {
+                return false;
+            }
+            final String name;
             try {
-                Document document = downloader.download(url);
-                if (depth > 1) {
-                    extract.submit(() -> {
-                        try {
-                            used.addAll(document.extractLinks());
-                        } catch (IOException ignored) {
-                        } finally {
-                            phaser.arrive();
-                        }
-                    });
-                } else {
-                    phaser.arrive();
+                name = URLUtils.getHost(entry.url());
+            } catch (MalformedURLException e) {
+                exception.put(entry.url(), e);
+                metrics.error(e);
+                fail(FingerprintTable.fingerprint(entry.url()));
+                finish();
+                return true;
+            }
+            final Share share = shares.computeIfAbsent(name, Share::new);
+            if (!share.full() && share.waiting.isEmpty()) {
+                admit(share, entry);
+            } else if (deferred < FRONTIER_MEMORY) {
+                deferred++;
+                share.waiting.add(entry);
+            } else {
+                frontier.addFirst(entry);
+                return false;
+            }
+            return true;
+        }
+
+        private void admit(Share share, Frontier.Entry entry) {
+            admitted.incrementAndGet();
+            share.admitted++;
+            final String url = entry.url();
+            final long fingerprint = FingerprintTable.fingerprint(url);
+            while (true) {
+                final Host host = hosts.computeIfAbsent(share.name, name -> new Host(perHost, load));
+                if (host.submit(() -> {
+                    try {
+                        download(url, fingerprint, host);
+                    } finally {
+                        finish();
+                        downloaded(share);
+                        pump();
+                    }
+                })) {
+                    return;
                 }
+                hosts.remove(share.name, host);
+            }
+        }
+
+        private synchronized void downloaded(Share share) {
+            admitted.decrementAndGet();
+            share.admitted--;
+            enqueue(share);
+            if (share.admitted == 0 && share.waiting.isEmpty()) {
+                shares.remove(share.name);
+            }
+        }
+
+        private void enqueue(Share share) {
+            if (!share.queued && !share.full() && !share.waiting.isEmpty()) {
+                share.queued = true;
+                ready.add(share);
+            }
+        }
+
+        private void download(String url, long fingerprint, Host host) {
+            if (permits != null) {
+                permits.acquireUninterruptibly();
+            }
+            final long start = System.nanoTime();
+            final Document document;
+            try {
+                document = downloader.download(url);
             } catch (IOException e) {
-                downloaded.remove(url);
                 exception.put(url, e);
-                phaser.arrive();
+                metrics.error(e);
+                fail(fingerprint);
+                return;
+            } finally {
+                host.downloaded(System.nanoTime() - start);
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+            downloaded.add(url);
+            metrics.page();
+            final int depth = depthOf(pages.update(fingerprint, value -> state(depthOf(value), EXTRACTING)));
+            if (depth > 1) {
+                extract.execute(task(() -> process(fingerprint, document, depth)));
+            } else {
+                process(fingerprint, document, depth);
+            }
+        }
+
+        /**
+         * Extracts links of a downloaded page and marks it done, or extracts again if it was upgraded meanwhile.
+         */
+        private void process(long fingerprint, Document document, int depth) {
+            if (depth > 1) {
+                try {
+                    for (String link : document.extractLinks()) {
+                        visit(link, depth - 1);
+                    }
+                } catch (IOException ignored) {
+                }
+            }
+            retain(fingerprint, document, depth);
+            final int current = depthOf(pages.update(fingerprint, value -> {
+                if (depthOf(value) != depth) {
+                    return value;
+                }
+                count(depth, -1);
+                return state(depth, DONE);
+            }));
+            if (current != depth) {
+                extract.execute(task(() -> process(fingerprint, document, current)));
+            }
+        }
+    }
+
+    /**
+     * Drops hosts no crawl is downloading from, keeping their counters in {@link CrawlMetrics#finishedHosts()}.
+     */
+    private void retireIdleHosts() {
+        for (Map.Entry<String, Host> entry : hosts.entrySet()) {
+            if (entry.getValue().retire()) {
+                hosts.remove(entry.getKey(), entry.getValue());
+                metrics.retire(entry.getValue());
             }
-        } else {
-            phaser.arrive();
         }
     }
 
     @Override
     public void close() {
+        metrics.close();
         load.shutdown();
         extract.shutdown();
         while (true) {
@@ -0,0 +1,250 @@
+package info.kgeorgiy.ja.mikhailov.student;
+
+import info.kgeorgiy.java.advanced.student.GroupName;
+import info.kgeorgiy.java.advanced.student.Student;
+import info.kgeorgiy.java.advanced.student.StudentQuery;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * {@link StudentQuery} that caches results of another one.
+ * <p>
+ * Results are keyed by the query method, its arguments and the identity of the collection.
+ * Only {@link Invalidation#MANUAL} makes a repeated query O(1); see {@link Invalidation#CONTENT_HASH} for its cost.
+ * The cache is LRU, bounded by the number of entries and by their total weight, that is the total number
+ * of cached elements. Cached lists, maps and sets are returned unmodifiable, since every caller shares them.
+ * Cached collections are kept reachable until their entries are evicted.
+ */
+public class CachingStudentQuery implements StudentQuery {
+
+    public enum Invalidation {
+        /** A changed collection must be passed to {@link #invalidate(Collection)}. A hit is one hash lookup. */
+        MANUAL,
+        /**
+         * The {@code hashCode()} of the collection is part of the key, so changes are noticed without
+         * {@link #invalidate(Collection)}. Every query, hit or not, rehashes the whole collection, so a hit is O(n):
+         * it only saves the sorting and filtering of the delegate.
+         */
+        CONTENT_HASH
+    }
+
+    private static final class Key {
+        private final String method;
+        private final Collection<Student> students;
+        private final int contentHash;
+        private final Object argument;
+
+        private Key(String method, Collection<Student> students, int contentHash, Object argument) {
+            this.method = method;
+            this.students = students;
+            this.contentHash = contentHash;
+            this.argument = argument;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key key
+                    && students == key.students
+                    && contentHash == key.contentHash
+                    && method.equals(key.method)
+                    && Objects.equals(argument, key.argument);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(method, System.identityHashCode(students), contentHash, argument);
+        }
+    }
+
+    private static final class Entry {
+        private final Object result;
+        private final long weight;
+
+        private Entry(Object result, long weight) {
+            this.result = result;
+            this.weight = weight;
+        }
+    }
+
+    private final StudentQuery delegate;
+    private final Invalidation invalidation;
+    private final int maxEntries;
+    private final long maxWeight;
+    private final LinkedHashMap<Key, Entry> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingStudentQuery(StudentQuery delegate, Invalidation invalidation, int maxEntries, long maxWeight) {
+        if (maxEntries < 1 || maxWeight < 1) {
+            throw new IllegalArgumentException("Cache bounds must be positive");
+        }
+        this.delegate = delegate;
+        this.invalidation = invalidation;
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    private <C extends Collection<Student>, R> R cached(String method, C students, Object argument, Function<C, R> query) {
+        final int contentHash = invalidation == Invalidation.CONTENT_HASH ? students.hashCode() : 0;
+        final Key key = new Key(method, students, contentHash, argument);
+        synchronized (cache) {
+            final Entry entry = cache.get(key);
+            if (entry != null) {
+                hits.increment();
+                @SuppressWarnings("unchecked")
+                final R result = (R) entry.result;
+                return result;
+            }
+        }
+        misses.increment();
+        final R result = unmodifiable(query.apply(students));
+        final long resultWeight = weight(result);
+        if (resultWeight <= maxWeight) {
+            synchronized (cache) {
+                final Entry old = cache.put(key, new Entry(result, resultWeight));
+                weight += resultWeight - (old == null ? 0 : old.weight);
+                evict();
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> R unmodifiable(R result) {
+        if (result instanceof List<?> list) {
+            return (R) Collections.unmodifiableList(list);
+        }
+        if (result instanceof Map<?, ?> map) {
+            return (R) Collections.unmodifiableMap(map);
+        }
+        if (result instanceof Set<?> set) {
+            return (R) Collections.unmodifiableSet(set);
+        }
+        return result;
+    }
+
+    private static long weight(Object result) {
+        if (result instanceof Collection<?> collection) {
+            return collection.size() + 1;
+        }
+        if (result instanceof Map<?, ?> map) {
+            return map.size() + 1;
+        }
+        return 1;
+    }
+
+    private void evict() {
+        final Iterator<Entry> iterator = cache.values().iterator();
+        while (iterator.hasNext() && (cache.size() > maxEntries || weight > maxWeight)) {
+            weight -= iterator.next().weight;
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Drops all cached results for the collection.
+     */
+    public void invalidate(Collection<Student> students) {
+        synchronized (cache) {
+            final Iterator<Map.Entry<Key, Entry>> iterator = cache.entrySet().iterator();
+            while (iterator.hasNext()) {
+                final Map.Entry<Key, Entry> entry = iterator.next();
+                if (entry.getKey().students == students) {
+                    weight -= entry.getValue().weight;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+            weight = 0;
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public String statistics() {
+        synchronized (cache) {
+            return String.format("Student query cache: %d hits, %d misses, %d evictions, %d entries, weight %d",
+                    hits(), misses(), evictions(), cache.size(), weight);
+        }
+    }
+
+    @Override
+    public List<String> getFirstNames(List<Student> students) {
+        return cached("getFirstNames", students, null, delegate::getFirstNames);
+    }
+
+    @Override
+    public List<String> getLastNames(List<Student> students) {
+        return cached("getLastNames", students, null, delegate::getLastNames);
+    }
+
+    @Override
+    public List<GroupName> getGroups(List<Student> students) {
+        return cached("getGroups", students, null, delegate::getGroups);
+    }
+
+    @Override
+    public List<String> getFullNames(List<Student> students) {
+        return cached("getFullNames", students, null, delegate::getFullNames);
+    }
+
+    @Override
+    public Set<String> getDistinctFirstNames(List<Student> students) {
+        return cached("getDistinctFirstNames", students, null, delegate::getDistinctFirstNames);
+    }
+
+    @Override
+    public String getMaxStudentFirstName(List<Student> students) {
+        return cached("getMaxStudentFirstName", students, null, delegate::getMaxStudentFirstName);
+    }
+
+    @Override
+    public List<Student> sortStudentsById(Collection<Student> students) {
+        return cached("sortStudentsById", students, null, delegate::sortStudentsById);
+    }
+
+    @Override
+    public List<Student> sortStudentsByName(Collection<Student> students) {
+        return cached("sortStudentsByName", students, null, delegate::sortStudentsByName);
+    }
+
+    @Override
+    public List<Student> findStudentsByFirstName(Collection<Student> students, String name) {
+        return cached("findStudentsByFirstName", students, name, s -> delegate.findStudentsByFirstName(s, name));
+    }
+
+    @Override
+    public List<Student> findStudentsByLastName(Collection<Student> students, String name) {
+        return cached("findStudentsByLastName", students, name, s -> delegate.findStudentsByLastName(s, name));
+    }
+
+    @Override
+    public List<Student> findStudentsByGroup(Collection<Student> students, GroupName group) {
+        return cached("findStudentsByGroup", students, group, s -> delegate.findStudentsByGroup(s, group));
+    }
+
+    @Override
+    public Map<String, String> findStudentNamesByGroup(Collection<Student> students, GroupName group) {
+        return cached("findStudentNamesByGroup", students, group, s -> delegate.findStudentNamesByGroup(s, group));
+    }
+}
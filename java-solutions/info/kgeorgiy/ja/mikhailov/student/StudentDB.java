@@ -11,47 +11,82 @@ import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * Queries run sequentially unless a {@code parallelThreshold} is given, then collections of at least that many
+ * students are queried on parallel streams. Pick the threshold with {@link StudentDBBenchmark} on the target machine.
+ * Results do not depend on the mode: parallel sorts are stable and reductions keep encounter order.
+ * Views of a {@link StudentSnapshot} are not sorted again, its precomputed name order is used instead.
+ * Queries on the {@link StudentStore#students()} view of a columnar store are run by the store.
+ */
 public class StudentDB implements StudentQuery {
 
+    private final int parallelThreshold;
+
+    public StudentDB() {
+        this(Integer.MAX_VALUE);
+    }
+
+    public StudentDB(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    private <T> Stream<T> stream(Collection<T> collection) {
+        return collection.size() >= parallelThreshold ? collection.parallelStream() : collection.stream();
+    }
+
     private <T> List<T> getByAttribute(List<Student> students, Function<Student, T> f) {
-        return students.stream()
+        return stream(students)
                 .map(f)
                 .toList();
     }
 
     @Override
     public List<String> getFirstNames(List<Student> students) {
-        return getByAttribute(students, Student::getFirstName);
+        final StudentStore store = StudentStore.of(students);
+        return store != null ? store.getFirstNames() : getByAttribute(students, Student::getFirstName);
     }
 
     @Override
     public List<String> getLastNames(List<Student> students) {
-        return getByAttribute(students, Student::getLastName);
+        final StudentStore store = StudentStore.of(students);
+        return store != null ? store.getLastNames() : getByAttribute(students, Student::getLastName);
     }
 
     @Override
     public List<GroupName> getGroups(List<Student> students) {
-        return getByAttribute(students, Student::getGroup);
+        final StudentStore store = StudentStore.of(students);
+        return store != null ? store.getGroups() : getByAttribute(students, Student::getGroup);
     }
 
     @Override
     public List<String> getFullNames(List<Student> students) {
-        return students.stream()
+        final StudentStore store = StudentStore.of(students);
+        if (store != null) {
+            return store.getFullNames();
+        }
+        return stream(students)
                 .map(element -> element.getFirstName() + " " + element.getLastName())
                 .toList();
     }
 
     @Override
     public Set<String> getDistinctFirstNames(List<Student> students) {
-        return students.stream()
-                .sorted(Comparator.comparing(Student::getFirstName))
+        final StudentStore store = StudentStore.of(students);
+        if (store != null) {
+            return store.getDistinctFirstNames();
+        }
+        return stream(students)
                 .map(Student::getFirstName)
                 .collect(Collectors.toSet());
     }
 
     @Override
     public String getMaxStudentFirstName(List<Student> students) {
-        return students.stream()
+        final StudentStore store = StudentStore.of(students);
+        if (store != null) {
+            return store.getMaxStudentFirstName();
+        }
+        return stream(students)
                 .max(Student::compareTo)
                 .map(Student::getFirstName).orElse("");
     }
@@ -59,49 +94,166 @@ public class StudentDB implements StudentQuery {
 
     @Override
     public List<Student> sortStudentsById(Collection<Student> students) {
-        return students.stream()
+        final StudentStore store = StudentStore.of(students);
+        if (store != null) {
+            return store.sortStudentsById();
+        }
+        return stream(students)
                 .sorted(Student::compareTo)
                 .toList();
     }
 
-    private static final Comparator<Student> COMPARATOR = Comparator.comparing(Student::getLastName, Comparator.reverseOrder())
+    static final Comparator<Student> COMPARATOR = Comparator.comparing(Student::getLastName, Comparator.reverseOrder())
             .thenComparing(Student::getFirstName, Comparator.reverseOrder())
             .thenComparing(Student::getId);
 
     @Override
     public List<Student> sortStudentsByName(Collection<Student> students) {
-        return students.stream().sorted(COMPARATOR)
+        final StudentStore store = StudentStore.of(students);
+        if (store != null) {
+            return store.sortStudentsByName();
+        }
+        final List<Student> sorted = StudentSnapshot.sortedByName(students);
+        if (sorted != null) {
+            return sorted;
+        }
+        return stream(students).sorted(COMPARATOR)
                 .toList();
     }
 
     private List<Student> findStudentsBy(Collection<Student> students, Predicate<Student> predicate) {
-        return sortStudentsByName(students).stream()
+        final List<Student> sorted = StudentSnapshot.sortedByName(students);
+        if (sorted != null) {
+            return stream(sorted)
+                    .filter(predicate)
+                    .toList();
+        }
+        return stream(students)
                 .filter(predicate)
+                .sorted(COMPARATOR)
                 .toList();
     }
 
     @Override
     public List<Student> findStudentsByFirstName(Collection<Student> students, String name) {
+        final StudentStore store = StudentStore.of(students);
+        if (store != null) {
+            return store.findStudentsByFirstName(name);
+        }
         return findStudentsBy(students, student -> student.getFirstName().equals(name));
     }
 
     @Override
     public List<Student> findStudentsByLastName(Collection<Student> students, String name) {
+        final StudentStore store = StudentStore.of(students);
+        if (store != null) {
+            return store.findStudentsByLastName(name);
+        }
         return findStudentsBy(students, student -> student.getLastName().equals(name));
     }
 
     @Override
     public List<Student> findStudentsByGroup(Collection<Student> students, GroupName group) {
+        final StudentStore store = StudentStore.of(students);
+        if (store != null) {
+            return store.findStudentsByGroup(group);
+        }
         return findStudentsBy(students, student -> student.getGroup().equals(group));
     }
 
     @Override
     public Map<String, String> findStudentNamesByGroup(Collection<Student> students, GroupName group) {
-        return students.stream()
+        final StudentStore store = StudentStore.of(students);
+        if (store != null) {
+            return store.findStudentNamesByGroup(group);
+        }
+        return stream(students)
                 .filter(student -> student.getGroup().equals(group))
                 .collect(Collectors.toMap(
                         Student::getLastName,
                         Student::getFirstName,
                         BinaryOperator.minBy(String::compareTo)));
     }
+
+    /**
+     * Per-group aggregates returned by {@link #getGroupStatistics(Collection)}.
+     */
+    public record GroupStatistics(GroupName group, int students, int distinctFirstNames) {
+    }
+
+    /**
+     * Partial aggregates of one thread, merged when parallel streams join.
+     */
+    private static final class GroupAggregate {
+        private static final GroupName[] GROUPS = GroupName.values();
+
+        private final int[] students = new int[GROUPS.length];
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private final Set<String>[] firstNames = new Set[GROUPS.length];
+
+        void add(Student student) {
+            final int group = student.getGroup().ordinal();
+            students[group]++;
+            if (firstNames[group] == null) {
+                firstNames[group] = new HashSet<>();
+            }
+            firstNames[group].add(student.getFirstName());
+        }
+
+        void merge(GroupAggregate other) {
+            for (int group = 0; group < GROUPS.length; group++) {
+                students[group] += other.students[group];
+                if (other.firstNames[group] != null) {
+                    if (firstNames[group] == null) {
+                        firstNames[group] = other.firstNames[group];
+                    } else {
+                        firstNames[group].addAll(other.firstNames[group]);
+                    }
+                }
+            }
+        }
+
+        Map<GroupName, GroupStatistics> statistics() {
+            final Map<GroupName, GroupStatistics> statistics = new EnumMap<>(GroupName.class);
+            for (int group = 0; group < GROUPS.length; group++) {
+                if (students[group] > 0) {
+                    statistics.put(GROUPS[group], new GroupStatistics(GROUPS[group], students[group], firstNames[group].size()));
+                }
+            }
+            return statistics;
+        }
+    }
+
+    /**
+     * Computes all group aggregates in a single pass, ordered by group.
+     */
+    public Map<GroupName, GroupStatistics> getGroupStatistics(Collection<Student> students) {
+        return stream(students)
+                .collect(GroupAggregate::new, GroupAggregate::add, GroupAggregate::merge)
+                .statistics();
+    }
+
+    /**
+     * Returns the group with the most students, the greatest one on ties, or {@code null} if there are no students.
+     */
+    public GroupName getLargestGroup(Collection<Student> students) {
+        return getLargestGroup(students, Comparator.comparingInt(GroupStatistics::students)
+                .thenComparing(GroupStatistics::group));
+    }
+
+    /**
+     * Returns the group with the most distinct first names, the smallest one on ties,
+     * or {@code null} if there are no students.
+     */
+    public GroupName getLargestGroupFirstName(Collection<Student> students) {
+        return getLargestGroup(students, Comparator.comparingInt(GroupStatistics::distinctFirstNames)
+                .thenComparing(GroupStatistics::group, Comparator.reverseOrder()));
+    }
+
+    private GroupName getLargestGroup(Collection<Student> students, Comparator<GroupStatistics> comparator) {
+        return getGroupStatistics(students).values().stream()
+                .max(comparator)
+                .map(GroupStatistics::group)
+                .orElse(null);
+    }
 }
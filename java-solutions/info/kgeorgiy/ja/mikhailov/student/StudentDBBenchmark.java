@@ -0,0 +1,71 @@
+package info.kgeorgiy.ja.mikhailov.student;
+
+import info.kgeorgiy.java.advanced.student.GroupName;
+import info.kgeorgiy.java.advanced.student.Student;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Times sequential and parallel {@link StudentDB} queries on random rosters of growing size
+ * to find where parallel execution starts to pay off.
+ * <p>
+ * Usage: {@code StudentDBBenchmark [<max size>]}, sizes go from 1K to 4M by default.
+ */
+public class StudentDBBenchmark {
+
+    private static final int MIN_SIZE = 1 << 10;
+    private static final int DEFAULT_MAX_SIZE = 1 << 22;
+    private static final int NAMES = 1000;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) {
+        int maxSize = DEFAULT_MAX_SIZE;
+        if (args.length > 0) {
+            try {
+                maxSize = Integer.parseInt(args[0]);
+            } catch (NumberFormatException e) {
+                System.err.println("Size must be integer: " + e.getMessage());
+                return;
+            }
+        }
+        final StudentDB sequential = new StudentDB(Integer.MAX_VALUE);
+        final StudentDB parallel = new StudentDB(0);
+        System.out.printf("%10s %28s %12s %12s%n", "size", "query", "seq, ms", "par, ms");
+        for (int size = MIN_SIZE; size <= maxSize; size <<= 2) {
+            final List<Student> students = generate(size);
+            final GroupName group = students.get(0).getGroup();
+            print(size, "sortStudentsByName", sequential, parallel, db -> db.sortStudentsByName(students));
+            print(size, "findStudentNamesByGroup", sequential, parallel, db -> db.findStudentNamesByGroup(students, group));
+            print(size, "getDistinctFirstNames", sequential, parallel, db -> db.getDistinctFirstNames(students));
+        }
+    }
+
+    private static void print(int size, String query, StudentDB sequential, StudentDB parallel, Consumer<StudentDB> run) {
+        System.out.printf("%10d %28s %12.3f %12.3f%n", size, query, measure(sequential, run), measure(parallel, run));
+    }
+
+    private static double measure(StudentDB db, Consumer<StudentDB> run) {
+        run.accept(db);
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            final long start = System.nanoTime();
+            run.accept(db);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best / 1e6;
+    }
+
+    private static List<Student> generate(int size) {
+        final Random random = new Random(size);
+        final GroupName[] groups = GroupName.values();
+        final List<Student> students = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            students.add(new Student(i, "First" + random.nextInt(NAMES), "Last" + random.nextInt(NAMES),
+                    groups[random.nextInt(groups.length)]));
+        }
+        return students;
+    }
+}
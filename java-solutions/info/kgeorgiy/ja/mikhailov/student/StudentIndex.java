@@ -0,0 +1,63 @@
+package info.kgeorgiy.ja.mikhailov.student;
+
+import info.kgeorgiy.java.advanced.student.GroupName;
+import info.kgeorgiy.java.advanced.student.Student;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Hash indexes of a student collection by first name, last name and group.
+ * <p>
+ * The collection is sorted once on construction; every query then costs O(matches) and returns the same
+ * result as the {@link StudentDB} method with the same name. The index does not follow later changes of the collection.
+ */
+public class StudentIndex {
+
+    private final List<Student> sortedByName;
+    private final Map<String, List<Student>> byFirstName;
+    private final Map<String, List<Student>> byLastName;
+    private final Map<GroupName, List<Student>> byGroup;
+
+    public StudentIndex(Collection<Student> students) {
+        sortedByName = students.stream()
+                .sorted(StudentDB.COMPARATOR)
+                .toList();
+        byFirstName = index(Student::getFirstName);
+        byLastName = index(Student::getLastName);
+        byGroup = index(Student::getGroup);
+    }
+
+    private <K> Map<K, List<Student>> index(Function<Student, K> key) {
+        return sortedByName.stream()
+                .collect(Collectors.groupingBy(key, Collectors.toUnmodifiableList()));
+    }
+
+    public List<Student> sortStudentsByName() {
+        return sortedByName;
+    }
+
+    public List<Student> findStudentsByFirstName(String name) {
+        return byFirstName.getOrDefault(name, List.of());
+    }
+
+    public List<Student> findStudentsByLastName(String name) {
+        return byLastName.getOrDefault(name, List.of());
+    }
+
+    public List<Student> findStudentsByGroup(GroupName group) {
+        return byGroup.getOrDefault(group, List.of());
+    }
+
+    public Map<String, String> findStudentNamesByGroup(GroupName group) {
+        return findStudentsByGroup(group).stream()
+                .collect(Collectors.toMap(
+                        Student::getLastName,
+                        Student::getFirstName,
+                        BinaryOperator.minBy(String::compareTo)));
+    }
+}
@@ -0,0 +1,240 @@
+package info.kgeorgiy.ja.mikhailov.student;
+
+import info.kgeorgiy.java.advanced.student.GroupName;
+import info.kgeorgiy.java.advanced.student.Student;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Immutable student list stored in a binary file and memory-mapped on {@link #open(Path)}.
+ * <p>
+ * The file is a 20-byte header (magic, version, students, strings, string bytes) followed by fixed-width records
+ * (id, first name, last name, group ordinal), the row order of {@link StudentDB#COMPARATOR}, string offsets and
+ * UTF-8 string data, all little-endian. Names and students are decoded on first access and kept, so opening
+ * only maps the file. {@link StudentDB} takes the precomputed order instead of sorting views of a snapshot.
+ */
+public class StudentSnapshot {
+
+    private static final int MAGIC = 0x53545544;
+    private static final int VERSION = 1;
+    private static final int HEADER = 20;
+    private static final int RECORD = 4 * Integer.BYTES;
+    private static final int WRITE_BUFFER = 1 << 16;
+    private static final GroupName[] GROUPS = GroupName.values();
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int order;
+    private final int offsets;
+    private final int data;
+    private final String[] strings;
+    private final Student[] students;
+    private final List<Student> view = new Students(false);
+    private final List<Student> byName = new Students(true);
+
+    private StudentSnapshot(ByteBuffer buffer, int size, int strings) {
+        this.buffer = buffer;
+        this.size = size;
+        this.order = HEADER + size * RECORD;
+        this.offsets = order + size * Integer.BYTES;
+        this.data = offsets + (strings + 1) * Integer.BYTES;
+        this.strings = new String[strings];
+        this.students = new Student[size];
+    }
+
+    /**
+     * Writes the students to {@code file}, replacing it.
+     * The snapshot is written to a temporary file that is atomically moved over {@code file},
+     * so readers that have the old snapshot mapped keep decoding it intact.
+     * Its mode comes from the umask, as for any new file, so other accounts can still open it.
+     */
+    public static void write(Path file, Collection<Student> students) throws IOException {
+        final List<Student> list = new ArrayList<>(students);
+        final Map<String, Integer> codes = new HashMap<>();
+        final List<byte[]> strings = new ArrayList<>();
+        int bytes = 0;
+        for (Student student : list) {
+            for (String name : List.of(student.getFirstName(), student.getLastName())) {
+                if (!codes.containsKey(name)) {
+                    codes.put(name, strings.size());
+                    strings.add(name.getBytes(StandardCharsets.UTF_8));
+                    bytes += strings.get(strings.size() - 1).length;
+                }
+            }
+        }
+        final int[] byName = IntStream.range(0, list.size()).boxed()
+                .sorted(Comparator.comparing(list::get, StudentDB.COMPARATOR))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        final Path temp = file.resolveSibling(file.getFileName() + "."
+                + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(MAGIC).putInt(VERSION).putInt(list.size()).putInt(strings.size()).putInt(bytes);
+                for (Student student : list) {
+                    ensure(channel, buffer, RECORD);
+                    buffer.putInt(student.getId())
+                            .putInt(codes.get(student.getFirstName()))
+                            .putInt(codes.get(student.getLastName()))
+                            .putInt(student.getGroup().ordinal());
+                }
+                for (int row : byName) {
+                    ensure(channel, buffer, Integer.BYTES);
+                    buffer.putInt(row);
+                }
+                int offset = 0;
+                for (byte[] string : strings) {
+                    ensure(channel, buffer, Integer.BYTES);
+                    buffer.putInt(offset);
+                    offset += string.length;
+                }
+                ensure(channel, buffer, Integer.BYTES);
+                buffer.putInt(offset);
+                for (byte[] string : strings) {
+                    ensure(channel, buffer, string.length);
+                    if (string.length > buffer.capacity()) {
+                        final ByteBuffer wrapped = ByteBuffer.wrap(string);
+                        while (wrapped.hasRemaining()) {
+                            channel.write(wrapped);
+                        }
+                    } else {
+                        buffer.put(string);
+                    }
+                }
+                writeFully(channel, buffer);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void ensure(FileChannel channel, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            writeFully(channel, buffer);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Maps a file written by {@link #write(Path, Collection)}.
+     *
+     * @throws IOException if the file cannot be mapped or is not a student snapshot
+     */
+    public static StudentSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Not a student snapshot file: " + file);
+            }
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a student snapshot file: " + file);
+            }
+            final long size = buffer.getInt(8);
+            final long strings = buffer.getInt(12);
+            final long bytes = buffer.getInt(16);
+            if (size < 0 || strings < 0 || bytes < 0
+                    || channel.size() != HEADER + size * (RECORD + Integer.BYTES) + (strings + 1) * Integer.BYTES + bytes) {
+                throw new IOException("Student snapshot file is truncated: " + file);
+            }
+            return new StudentSnapshot(buffer, (int) size, (int) strings);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns an unmodifiable view of the students in the written order.
+     */
+    public List<Student> students() {
+        return view;
+    }
+
+    /**
+     * Returns an unmodifiable view of the students in the {@link StudentDB#COMPARATOR} order.
+     */
+    public List<Student> sortedByName() {
+        return byName;
+    }
+
+    /**
+     * Returns the precomputed name order if {@code students} is a view of a snapshot, or {@code null}.
+     */
+    static List<Student> sortedByName(Collection<Student> students) {
+        return students instanceof StudentSnapshot.Students view ? view.snapshot().byName : null;
+    }
+
+    /**
+     * Concurrent decoding may create equal objects twice, which is harmless since they are immutable.
+     */
+    private Student student(int row) {
+        Student student = students[row];
+        if (student == null) {
+            final int record = HEADER + row * RECORD;
+            student = new Student(
+                    buffer.getInt(record),
+                    string(buffer.getInt(record + Integer.BYTES)),
+                    string(buffer.getInt(record + 2 * Integer.BYTES)),
+                    GROUPS[buffer.getInt(record + 3 * Integer.BYTES)]);
+            students[row] = student;
+        }
+        return student;
+    }
+
+    private String string(int code) {
+        String string = strings[code];
+        if (string == null) {
+            final int from = buffer.getInt(offsets + code * Integer.BYTES);
+            final byte[] bytes = new byte[buffer.getInt(offsets + (code + 1) * Integer.BYTES) - from];
+            buffer.get(data + from, bytes);
+            string = new String(bytes, StandardCharsets.UTF_8);
+            strings[code] = string;
+        }
+        return string;
+    }
+
+    private final class Students extends AbstractList<Student> implements RandomAccess {
+        private final boolean byName;
+
+        Students(boolean byName) {
+            this.byName = byName;
+        }
+
+        StudentSnapshot snapshot() {
+            return StudentSnapshot.this;
+        }
+
+        @Override
+        public Student get(int index) {
+            Objects.checkIndex(index, size);
+            return student(byName ? buffer.getInt(order + index * Integer.BYTES) : index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package info.kgeorgiy.ja.mikhailov.student;
+
+import info.kgeorgiy.java.advanced.student.GroupName;
+import info.kgeorgiy.java.advanced.student.Student;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * Columnar, dictionary-encoded copy of a student list with the queries of {@link StudentDB}.
+ * <p>
+ * Every student is a row of an {@code int} id, {@code int} codes of the first and last names and a {@code byte}
+ * group ordinal. Name dictionaries are sorted, so comparing codes is the same as comparing names and queries
+ * never touch strings. The name order of {@link StudentDB#COMPARATOR} is computed once on construction.
+ * Returned lists are unmodifiable views that decode rows on access, creating {@link Student} objects as needed.
+ * {@link StudentDB} runs its queries on the store when given the {@link #students()} view.
+ */
+public class StudentStore {
+
+    private static final GroupName[] GROUPS = GroupName.values();
+
+    private final int[] ids;
+    private final int[] firstNames;
+    private final int[] lastNames;
+    private final byte[] groups;
+    private final String[] firstNameDictionary;
+    private final String[] lastNameDictionary;
+    private final int[] byName;
+    private final List<Student> students = new Rows();
+
+    @FunctionalInterface
+    private interface RowComparator {
+        int compare(int a, int b);
+    }
+
+    public StudentStore(List<Student> students) {
+        final int size = students.size();
+        ids = new int[size];
+        firstNames = new int[size];
+        lastNames = new int[size];
+        groups = new byte[size];
+        firstNameDictionary = dictionary(students, Student::getFirstName);
+        lastNameDictionary = dictionary(students, Student::getLastName);
+        final Map<String, Integer> firstCodes = codes(firstNameDictionary);
+        final Map<String, Integer> lastCodes = codes(lastNameDictionary);
+        int row = 0;
+        for (Student student : students) {
+            ids[row] = student.getId();
+            firstNames[row] = firstCodes.get(student.getFirstName());
+            lastNames[row] = lastCodes.get(student.getLastName());
+            groups[row] = (byte) student.getGroup().ordinal();
+            row++;
+        }
+        byName = sortRows(allRows(), (a, b) -> {
+            int cmp = Integer.compare(lastNames[b], lastNames[a]);
+            if (cmp == 0) {
+                cmp = Integer.compare(firstNames[b], firstNames[a]);
+            }
+            return cmp == 0 ? Integer.compare(ids[a], ids[b]) : cmp;
+        });
+    }
+
+    private static String[] dictionary(List<Student> students, Function<Student, String> name) {
+        return students.stream()
+                .map(name)
+                .distinct()
+                .sorted()
+                .toArray(String[]::new);
+    }
+
+    private static Map<String, Integer> codes(String[] dictionary) {
+        final Map<String, Integer> codes = new HashMap<>();
+        for (int i = 0; i < dictionary.length; i++) {
+            codes.put(dictionary[i], i);
+        }
+        return codes;
+    }
+
+    private int[] allRows() {
+        final int[] rows = new int[ids.length];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        return rows;
+    }
+
+    /**
+     * Stable merge sort of row numbers.
+     */
+    private static int[] sortRows(int[] rows, RowComparator comparator) {
+        int[] source = rows;
+        int[] target = new int[rows.length];
+        for (int width = 1; width < rows.length; width <<= 1) {
+            for (int low = 0; low < rows.length; low += 2 * width) {
+                final int middle = Math.min(low + width, rows.length);
+                final int high = Math.min(low + 2 * width, rows.length);
+                int i = low;
+                int j = middle;
+                for (int k = low; k < high; k++) {
+                    target[k] = j >= high || i < middle && comparator.compare(source[i], source[j]) <= 0 ? source[i++] : source[j++];
+                }
+            }
+            final int[] swap = source;
+            source = target;
+            target = swap;
+        }
+        return source;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Returns an unmodifiable view of the students in the original order.
+     */
+    public List<Student> students() {
+        return students;
+    }
+
+    /**
+     * Returns the store if {@code students} is its {@link #students()} view, or {@code null}.
+     */
+    static StudentStore of(Collection<?> students) {
+        return students instanceof StudentStore.Rows rows ? rows.store() : null;
+    }
+
+    private final class Rows extends AbstractList<Student> implements RandomAccess {
+        StudentStore store() {
+            return StudentStore.this;
+        }
+
+        @Override
+        public Student get(int index) {
+            Objects.checkIndex(index, ids.length);
+            return student(index);
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+    }
+
+    private Student student(int row) {
+        return new Student(ids[row], firstNameDictionary[firstNames[row]], lastNameDictionary[lastNames[row]], GROUPS[groups[row]]);
+    }
+
+    private static <T> List<T> view(int size, IntFunction<T> get) {
+        return new AbstractList<>() {
+            @Override
+            public T get(int index) {
+                Objects.checkIndex(index, size);
+                return get.apply(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private List<Student> students(int[] rows) {
+        return view(rows.length, i -> student(rows[i]));
+    }
+
+    public List<String> getFirstNames() {
+        return view(size(), row -> firstNameDictionary[firstNames[row]]);
+    }
+
+    public List<String> getLastNames() {
+        return view(size(), row -> lastNameDictionary[lastNames[row]]);
+    }
+
+    public List<GroupName> getGroups() {
+        return view(size(), row -> GROUPS[groups[row]]);
+    }
+
+    public List<String> getFullNames() {
+        return view(size(), row -> firstNameDictionary[firstNames[row]] + " " + lastNameDictionary[lastNames[row]]);
+    }
+
+    public Set<String> getDistinctFirstNames() {
+        return Set.of(firstNameDictionary);
+    }
+
+    public String getMaxStudentFirstName() {
+        int max = -1;
+        for (int row = 0; row < size(); row++) {
+            if (max == -1 || ids[row] > ids[max]) {
+                max = row;
+            }
+        }
+        return max == -1 ? "" : firstNameDictionary[firstNames[max]];
+    }
+
+    public List<Student> sortStudentsById() {
+        return students(sortRows(allRows(), (a, b) -> Integer.compare(ids[a], ids[b])));
+    }
+
+    public List<Student> sortStudentsByName() {
+        return students(byName);
+    }
+
+    private List<Student> findStudentsBy(IntPredicate predicate) {
+        return students(Arrays.stream(byName).filter(predicate).toArray());
+    }
+
+    public List<Student> findStudentsByFirstName(String name) {
+        final int code = Arrays.binarySearch(firstNameDictionary, name);
+        return code < 0 ? List.of() : findStudentsBy(row -> firstNames[row] == code);
+    }
+
+    public List<Student> findStudentsByLastName(String name) {
+        final int code = Arrays.binarySearch(lastNameDictionary, name);
+        return code < 0 ? List.of() : findStudentsBy(row -> lastNames[row] == code);
+    }
+
+    public List<Student> findStudentsByGroup(GroupName group) {
+        final byte code = (byte) group.ordinal();
+        return findStudentsBy(row -> groups[row] == code);
+    }
+
+    public Map<String, String> findStudentNamesByGroup(GroupName group) {
+        final byte code = (byte) group.ordinal();
+        final int[] minFirstName = new int[lastNameDictionary.length];
+        Arrays.fill(minFirstName, -1);
+        for (int row = 0; row < size(); row++) {
+            if (groups[row] == code && (minFirstName[lastNames[row]] == -1 || firstNames[row] < minFirstName[lastNames[row]])) {
+                minFirstName[lastNames[row]] = firstNames[row];
+            }
+        }
+        final Map<String, String> names = new HashMap<>();
+        for (int last = 0; last < minFirstName.length; last++) {
+            if (minFirstName[last] != -1) {
+                names.put(lastNameDictionary[last], firstNameDictionary[minFirstName[last]]);
+            }
+        }
+        return names;
+    }
+}
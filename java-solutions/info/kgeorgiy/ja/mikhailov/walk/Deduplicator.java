@@ -0,0 +1,137 @@
+package info.kgeorgiy.ja.mikhailov.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.Future;
+
+/**
+ * Finds groups of files with equal content while reading as little as possible.
+ * <p>
+ * Files are grouped by size first. Files whose size is shared are compared by a digest of their first and last
+ * {@code EDGE_BLOCK} bytes, and only files that still collide are hashed in full.
+ * <p>
+ * A file is added once: repeated paths and links to an already added file are reported to stderr and left out
+ * of the groups, so every group lists distinct copies.
+ */
+class Deduplicator {
+
+    private static final int EDGE_BLOCK = 4096;
+
+    static final class Candidate {
+        final String name;
+        final Path path;
+        private final int order;
+        byte[] digest;
+
+        private Candidate(String name, Path path, int order) {
+            this.name = name;
+            this.path = path;
+            this.order = order;
+        }
+    }
+
+    private final Map<Long, List<Candidate>> bySize = new HashMap<>();
+    private final Map<Object, String> added = new HashMap<>();
+    private int files;
+    private int edgeHashed;
+    private int fullyHashed;
+    private int sameFiles;
+
+    void add(String filename) {
+        try {
+            add(filename, Path.of(filename));
+        } catch (InvalidPathException e) {
+            System.err.println("Path doesn't exist or you've wrote wrong pathname: " + e.getMessage());
+        }
+    }
+
+    void add(Path path) {
+        add(path.toString(), path);
+    }
+
+    private void add(String name, Path path) {
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            final Object key = attributes.fileKey() != null ? attributes.fileKey() : path.toRealPath();
+            final String first = added.putIfAbsent(key, name);
+            if (first != null) {
+                sameFiles++;
+                System.err.println("Same file as " + first + ", skipped: " + name);
+                return;
+            }
+            bySize.computeIfAbsent(attributes.size(), s -> new ArrayList<>()).add(new Candidate(name, path, files++));
+        } catch (IOException e) {
+            System.err.println("There is a problem with your input file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns groups of duplicates, each ordered as the files were added, in the order of their first files.
+     * Digests of the returned files are full ones.
+     */
+    List<List<Candidate>> duplicates(HashPipeline pipeline) throws IOException {
+        List<List<Candidate>> groups = new ArrayList<>();
+        final List<List<Candidate>> small = new ArrayList<>();
+        for (Map.Entry<Long, List<Candidate>> entry : bySize.entrySet()) {
+            if (entry.getValue().size() > 1) {
+                (entry.getKey() > 2 * EDGE_BLOCK ? groups : small).add(entry.getValue());
+            }
+        }
+        bySize.clear();
+        added.clear();
+        groups = split(pipeline, groups, true);
+        groups.addAll(small);
+        groups = split(pipeline, groups, false);
+        for (List<Candidate> group : groups) {
+            group.sort(Comparator.comparingInt(candidate -> candidate.order));
+        }
+        groups.sort(Comparator.comparingInt(group -> group.get(0).order));
+        return groups;
+    }
+
+    /**
+     * Splits every group by edge or full digests, dropping files that are left alone or cannot be read.
+     */
+    private List<List<Candidate>> split(HashPipeline pipeline, List<List<Candidate>> groups, boolean edges) throws IOException {
+        final List<List<Future<byte[]>>> digests = new ArrayList<>();
+        for (List<Candidate> group : groups) {
+            final List<Future<byte[]>> futures = new ArrayList<>();
+            for (Candidate candidate : group) {
+                futures.add(pipeline.digest(candidate.path, edges ? EDGE_BLOCK : 0));
+            }
+            digests.add(futures);
+        }
+        final List<List<Candidate>> result = new ArrayList<>();
+        for (int i = 0; i < groups.size(); i++) {
+            final Map<ByteBuffer, List<Candidate>> byDigest = new LinkedHashMap<>();
+            for (int j = 0; j < groups.get(i).size(); j++) {
+                final Candidate candidate = groups.get(i).get(j);
+                candidate.digest = HashPipeline.await(digests.get(i).get(j));
+                if (candidate.digest != null) {
+                    byDigest.computeIfAbsent(ByteBuffer.wrap(candidate.digest), d -> new ArrayList<>()).add(candidate);
+                }
+            }
+            if (edges) {
+                edgeHashed += groups.get(i).size();
+            } else {
+                fullyHashed += groups.get(i).size();
+            }
+            for (List<Candidate> group : byDigest.values()) {
+                if (group.size() > 1) {
+                    result.add(group);
+                }
+            }
+        }
+        return result;
+    }
+
+    String statistics() {
+        return String.format("Deduplication: %d files, %d same files skipped, %d edge hashes, %d full hashes",
+                files, sameFiles, edgeHashed, fullyHashed);
+    }
+}
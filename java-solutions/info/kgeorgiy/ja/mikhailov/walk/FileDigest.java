@@ -0,0 +1,20 @@
+package info.kgeorgiy.ja.mikhailov.walk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Common interface of message digests and checksums used to hash files.
+ */
+interface FileDigest {
+
+    void update(byte[] bytes, int offset, int length);
+
+    void update(ByteBuffer buffer);
+
+    /**
+     * Completes the computation and resets the digest.
+     */
+    byte[] digest();
+
+    void reset();
+}
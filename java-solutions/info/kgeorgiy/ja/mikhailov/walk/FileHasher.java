@@ -0,0 +1,218 @@
+package info.kgeorgiy.ja.mikhailov.walk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hashes files with its own digest and read buffers, so every worker thread has to own a separate instance.
+ */
+class FileHasher {
+
+    /**
+     * How the file content is delivered to the digest.
+     */
+    enum ReadStrategy {
+        /** Channel reads into a small heap buffer. */
+        HEAP,
+        /** Channel reads into a large direct buffer. */
+        DIRECT,
+        /** Read-only memory-mapped chunks. */
+        MAPPED
+    }
+
+    private static final int HEAP_BUFFER_SIZE = 64 * 1024;
+    private static final int DIRECT_BUFFER_SIZE = 1024 * 1024;
+    private static final long MAPPED_CHUNK_SIZE = 64L * 1024 * 1024;
+    static final long DIRECT_THRESHOLD = 1024 * 1024;
+    static final long MAPPED_THRESHOLD = 64L * 1024 * 1024;
+
+    private final FileDigest digest;
+    private final byte[] bytes = new byte[HEAP_BUFFER_SIZE];
+    private final ByteBuffer heapBuffer = ByteBuffer.wrap(bytes);
+    private ByteBuffer directBuffer;
+    private final HashCache cache;
+    private final WalkMetrics metrics;
+    private long openNanos;
+    private long readNanos;
+    private long digestNanos;
+    private long readBytes;
+
+    FileHasher(HashAlgorithm algorithm) throws NoSuchAlgorithmException {
+        this(algorithm, null, null);
+    }
+
+    FileHasher(HashAlgorithm algorithm, HashCache cache, WalkMetrics metrics) throws NoSuchAlgorithmException {
+        this.digest = algorithm.create();
+        this.cache = cache;
+        this.metrics = metrics;
+    }
+
+    private long clock() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    static ReadStrategy strategyFor(long size) {
+        if (size >= MAPPED_THRESHOLD) {
+            return ReadStrategy.MAPPED;
+        }
+        return size >= DIRECT_THRESHOLD ? ReadStrategy.DIRECT : ReadStrategy.HEAP;
+    }
+
+    /**
+     * Returns the file digest or {@code null} if the file cannot be read.
+     */
+    byte[] hash(String filename) {
+        try {
+            return hash(Paths.get(filename));
+        } catch (InvalidPathException e) {
+            System.err.println("Path doesn't exist or you've wrote wrong pathname: " + e.getMessage());
+            if (metrics != null) {
+                metrics.error();
+            }
+            return null;
+        }
+    }
+
+    byte[] hash(Path path) {
+        final long start = clock();
+        openNanos = readNanos = digestNanos = 0;
+        try {
+            final byte[] result = cache == null ? hash(path, null) : hashCached(path);
+            if (metrics != null) {
+                metrics.file(path.toString(), readBytes, openNanos, readNanos, digestNanos, clock() - start);
+            }
+            return result;
+        } catch (IOException e) {
+            System.err.println("There is a problem with your input file: " + e.getMessage());
+            if (metrics != null) {
+                metrics.error();
+            }
+            return null;
+        }
+    }
+
+    private byte[] hashCached(Path path) throws IOException {
+        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        final String key = HashCache.key(path);
+        final byte[] cached = cache.lookup(key, attributes);
+        if (cached != null && !cache.isVerifying()) {
+            readBytes = 0;
+            return cached;
+        }
+        final byte[] digest = hash(path, null);
+        cache.store(key, attributes, digest, cached);
+        return digest;
+    }
+
+    /**
+     * Hashes the file with the given strategy, or with the one chosen by its size if {@code strategy} is {@code null}.
+     */
+    byte[] hash(Path path, ReadStrategy strategy) throws IOException {
+        final long start = clock();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            readBytes = size;
+            openNanos += clock() - start;
+            switch (strategy == null ? strategyFor(size) : strategy) {
+                case HEAP -> readHeap(channel);
+                case DIRECT -> readDirect(channel);
+                case MAPPED -> readMapped(channel, size);
+            }
+            return digest.digest();
+        } catch (IOException e) {
+            digest.reset();
+            throw e;
+        }
+    }
+
+    /**
+     * Hashes only the first and the last {@code block} bytes of the file, or returns {@code null} if it cannot be read.
+     */
+    byte[] hashEdges(Path path, int block) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            readRange(channel, 0, Math.min(block, size));
+            if (size > block) {
+                final long start = Math.max(block, size - block);
+                readRange(channel, start, size - start);
+            }
+            return digest.digest();
+        } catch (IOException e) {
+            digest.reset();
+            System.err.println("There is a problem with your input file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void readRange(FileChannel channel, long position, long length) throws IOException {
+        while (length > 0) {
+            heapBuffer.clear().limit((int) Math.min(length, bytes.length));
+            final int read = channel.read(heapBuffer, position);
+            if (read == -1) {
+                return;
+            }
+            digest.update(bytes, 0, read);
+            position += read;
+            length -= read;
+        }
+    }
+
+    private void readHeap(FileChannel channel) throws IOException {
+        heapBuffer.clear();
+        while (true) {
+            final long start = clock();
+            final int read = channel.read(heapBuffer);
+            final long end = clock();
+            readNanos += end - start;
+            if (read == -1) {
+                return;
+            }
+            digest.update(bytes, 0, read);
+            digestNanos += clock() - end;
+            heapBuffer.clear();
+        }
+    }
+
+    private void readDirect(FileChannel channel) throws IOException {
+        if (directBuffer == null) {
+            directBuffer = ByteBuffer.allocateDirect(DIRECT_BUFFER_SIZE);
+        }
+        directBuffer.clear();
+        while (true) {
+            final long start = clock();
+            final int read = channel.read(directBuffer);
+            final long end = clock();
+            readNanos += end - start;
+            if (read == -1) {
+                return;
+            }
+            directBuffer.flip();
+            digest.update(directBuffer);
+            digestNanos += clock() - end;
+            directBuffer.clear();
+        }
+    }
+
+    /**
+     * Page faults happen while the digest consumes a chunk, so mapped reads are mostly accounted as digest time.
+     */
+    private void readMapped(FileChannel channel, long size) throws IOException {
+        for (long position = 0; position < size; position += MAPPED_CHUNK_SIZE) {
+            final long start = clock();
+            final MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(MAPPED_CHUNK_SIZE, size - position));
+            final long end = clock();
+            readNanos += end - start;
+            digest.update(chunk);
+            digestNanos += clock() - end;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package info.kgeorgiy.ja.mikhailov.walk;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32C;
+import java.util.zip.Checksum;
+
+/**
+ * Hash algorithms available to {@link Walk}. Checksums are much cheaper than cryptographic digests
+ * and are enough for integrity scans.
+ */
+enum HashAlgorithm {
+    SHA_256("SHA-256", 32),
+    SHA_1("SHA-1", 20),
+    MD5("MD5", 16),
+    CRC32C("CRC32C", 4),
+    ADLER32("Adler32", 4);
+
+    private final String title;
+    private final int length;
+
+    HashAlgorithm(String title, int length) {
+        this.title = title;
+        this.length = length;
+    }
+
+    String title() {
+        return title;
+    }
+
+    /**
+     * Digest length in bytes.
+     */
+    int length() {
+        return length;
+    }
+
+    FileDigest create() throws NoSuchAlgorithmException {
+        return switch (this) {
+            case CRC32C -> new ChecksumDigest(new CRC32C());
+            case ADLER32 -> new ChecksumDigest(new Adler32());
+            default -> new MessageDigestAdapter(MessageDigest.getInstance(title));
+        };
+    }
+
+    static HashAlgorithm of(String title) {
+        for (HashAlgorithm algorithm : values()) {
+            if (algorithm.title.equalsIgnoreCase(title)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    private static final class MessageDigestAdapter implements FileDigest {
+        private final MessageDigest messageDigest;
+
+        private MessageDigestAdapter(MessageDigest messageDigest) {
+            this.messageDigest = messageDigest;
+        }
+
+        @Override
+        public void update(byte[] bytes, int offset, int length) {
+            messageDigest.update(bytes, offset, length);
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            messageDigest.update(buffer);
+        }
+
+        @Override
+        public byte[] digest() {
+            return messageDigest.digest();
+        }
+
+        @Override
+        public void reset() {
+            messageDigest.reset();
+        }
+    }
+
+    private static final class ChecksumDigest implements FileDigest {
+        private final Checksum checksum;
+
+        private ChecksumDigest(Checksum checksum) {
+            this.checksum = checksum;
+        }
+
+        @Override
+        public void update(byte[] bytes, int offset, int length) {
+            checksum.update(bytes, offset, length);
+        }
+
+        @Override
+        public void update(ByteBuffer buffer) {
+            checksum.update(buffer);
+        }
+
+        @Override
+        public byte[] digest() {
+            final int value = (int) checksum.getValue();
+            checksum.reset();
+            return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        }
+
+        @Override
+        public void reset() {
+            checksum.reset();
+        }
+    }
+}
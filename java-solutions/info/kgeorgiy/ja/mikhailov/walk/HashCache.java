@@ -0,0 +1,184 @@
+package info.kgeorgiy.ja.mikhailov.walk;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Persistent digests of files keyed by absolute path, size, modification time and file key.
+ * <p>
+ * The cache file is binary: a header with the digest algorithm and entry count followed by
+ * {@code <path length> <path bytes> <size> <mtime nanos> <file key length> <file key> <digest length> <digest>} records,
+ * where the file key is the string form of {@link BasicFileAttributes#fileKey()}, the device and inode on Unix.
+ * Only entries looked up or stored in this run are saved, so files that are gone drop out of the cache.
+ * It is saved to a temporary file, created with the umask like the cache file itself,
+ * and atomically moved over the old one.
+ */
+class HashCache {
+
+    private static final int MAGIC = 0x57414c4b;
+    private static final int VERSION = 2;
+
+    private static final class Entry {
+        private final long size;
+        private final long modified;
+        private final String fileKey;
+        private final byte[] digest;
+
+        private Entry(BasicFileAttributes attributes, byte[] digest) {
+            this(attributes.size(), modified(attributes), fileKey(attributes), digest);
+        }
+
+        private Entry(long size, long modified, String fileKey, byte[] digest) {
+            this.size = size;
+            this.modified = modified;
+            this.fileKey = fileKey;
+            this.digest = digest;
+        }
+
+        private boolean matches(BasicFileAttributes attributes) {
+            return size == attributes.size() && modified == modified(attributes) && fileKey.equals(fileKey(attributes));
+        }
+    }
+
+    private final String algorithm;
+    private final boolean verify;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<String> used = ConcurrentHashMap.newKeySet();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder mismatches = new LongAdder();
+
+    private HashCache(String algorithm, boolean verify) {
+        this.algorithm = algorithm;
+        this.verify = verify;
+    }
+
+    /**
+     * Loads the cache from {@code file}. A missing, unreadable or foreign file gives an empty cache,
+     * as does {@code rebuild}. With {@code verify} every file is hashed and compared to its cached digest.
+     */
+    static HashCache load(Path file, String algorithm, boolean rebuild, boolean verify) {
+        final HashCache cache = new HashCache(algorithm, verify);
+        if (rebuild || !Files.exists(file)) {
+            return cache;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                System.err.println("Not a hash cache, it will be rebuilt: " + file);
+                return cache;
+            }
+            if (!in.readUTF().equals(algorithm)) {
+                System.err.println("Hash cache was built for another algorithm, it will be rebuilt: " + file);
+                return cache;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String key = new String(readBytes(in), StandardCharsets.UTF_8);
+                final long size = in.readLong();
+                final long modified = in.readLong();
+                final String fileKey = new String(readBytes(in), StandardCharsets.UTF_8);
+                cache.entries.put(key, new Entry(size, modified, fileKey, readBytes(in)));
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read hash cache, it will be rebuilt: " + e.getMessage());
+            cache.entries.clear();
+        }
+        return cache;
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    void save(Path file) throws IOException {
+        final Path temp = file.resolveSibling(file.getFileName() + "."
+                + Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36) + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(algorithm);
+                final List<String> keys = new ArrayList<>(used);
+                out.writeInt(keys.size());
+                for (String key : keys) {
+                    final Entry entry = entries.get(key);
+                    writeBytes(out, key.getBytes(StandardCharsets.UTF_8));
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.modified);
+                    writeBytes(out, entry.fileKey.getBytes(StandardCharsets.UTF_8));
+                    writeBytes(out, entry.digest);
+                }
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    static String key(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    private static long modified(BasicFileAttributes attributes) {
+        return attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+    }
+
+    private static String fileKey(BasicFileAttributes attributes) {
+        final Object key = attributes.fileKey();
+        return key == null ? "" : key.toString();
+    }
+
+    boolean isVerifying() {
+        return verify;
+    }
+
+    /**
+     * Returns the cached digest if the file metadata has not changed, or {@code null} otherwise.
+     */
+    byte[] lookup(String key, BasicFileAttributes attributes) {
+        final Entry entry = entries.get(key);
+        if (entry != null && entry.matches(attributes)) {
+            used.add(key);
+            hits.increment();
+            return entry.digest;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Stores a freshly computed digest, reporting a mismatch with the {@code cached} one.
+     */
+    void store(String key, BasicFileAttributes attributes, byte[] digest, byte[] cached) {
+        if (cached != null && !Arrays.equals(cached, digest)) {
+            mismatches.increment();
+            System.err.println("Cached hash does not match file content: " + key);
+        }
+        entries.put(key, new Entry(attributes, digest));
+        used.add(key);
+    }
+
+    String statistics() {
+        return String.format("Hash cache: %d hits, %d misses%s", hits.sum(), misses.sum(),
+                verify ? ", " + mismatches.sum() + " mismatches" : "");
+    }
+}
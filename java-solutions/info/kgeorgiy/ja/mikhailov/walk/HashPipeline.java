@@ -0,0 +1,204 @@
+package info.kgeorgiy.ja.mikhailov.walk;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Hashes files on worker threads and writes {@code <hash> <path>} lines in submission order.
+ * With a single thread everything is done in place; otherwise each worker owns its {@link FileHasher}
+ * and at most {@code threads * PENDING_PER_THREAD} lines wait for the writer at once.
+ * Digests are hex-encoded by the writer into a reused buffer.
+ */
+class HashPipeline implements AutoCloseable {
+
+    private static final int PENDING_PER_THREAD = 64;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private static final class Pending {
+        private final String name;
+        private final Future<byte[]> digest;
+
+        private Pending(String name, Future<byte[]> digest) {
+            this.name = name;
+            this.digest = digest;
+        }
+    }
+
+    private final Writer writer;
+    private final FileHasher hasher;
+    private final ExecutorService workers;
+    private final ThreadLocal<FileHasher> hashers;
+    private final Deque<Pending> pending = new ArrayDeque<>();
+    private final int maxPending;
+    private final byte[] errorDigest;
+    private final char[] hex;
+    private final Deduplicator deduplicator;
+    private final WalkMetrics metrics;
+
+    /**
+     * Creates a pipeline. With {@code dedupe} files are only collected, and {@link #flush()} writes
+     * groups of duplicates separated by empty lines instead.
+     */
+    HashPipeline(Writer writer, int threads, HashAlgorithm algorithm, HashCache cache, boolean dedupe,
+                 WalkMetrics metrics) throws NoSuchAlgorithmException {
+        this.writer = writer;
+        this.deduplicator = dedupe ? new Deduplicator() : null;
+        this.metrics = metrics;
+        this.hasher = new FileHasher(algorithm, cache, metrics);
+        this.maxPending = threads * PENDING_PER_THREAD;
+        this.errorDigest = new byte[algorithm.length()];
+        this.hex = new char[2 * algorithm.length()];
+        if (threads == 1) {
+            workers = null;
+            hashers = null;
+        } else {
+            workers = Executors.newFixedThreadPool(threads);
+            hashers = ThreadLocal.withInitial(() -> {
+                try {
+                    return new FileHasher(algorithm, cache, metrics);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+    }
+
+    private void writeLine(byte[] digest, String name) throws IOException {
+        if (digest == null) {
+            digest = errorDigest;
+        }
+        for (int i = 0; i < digest.length; i++) {
+            hex[2 * i] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[digest[i] & 0xf];
+        }
+        final long start = metrics == null ? 0 : System.nanoTime();
+        writer.write(hex, 0, 2 * digest.length);
+        writer.write(' ');
+        writer.write(name);
+        writer.write(LINE_SEPARATOR);
+        if (metrics != null) {
+            metrics.write(System.nanoTime() - start);
+        }
+    }
+
+    void hash(String filename) throws IOException {
+        if (deduplicator != null) {
+            deduplicator.add(filename);
+        } else if (workers == null) {
+            writeLine(hasher.hash(filename), filename);
+        } else {
+            add(filename, workers.submit(() -> hashers.get().hash(filename)));
+        }
+    }
+
+    void hash(Path file) throws IOException {
+        if (deduplicator != null) {
+            deduplicator.add(file);
+        } else if (workers == null) {
+            writeLine(hasher.hash(file), file.toString());
+        } else {
+            add(file.toString(), workers.submit(() -> hashers.get().hash(file)));
+        }
+    }
+
+    void error(String name) throws IOException {
+        if (deduplicator != null) {
+            return;
+        }
+        if (workers == null) {
+            writeLine(null, name);
+        } else {
+            add(name, CompletableFuture.completedFuture(null));
+        }
+    }
+
+    /**
+     * Computes a full digest of the file, or a digest of its first and last {@code edgeBlock} bytes if it is positive.
+     */
+    Future<byte[]> digest(Path file, int edgeBlock) {
+        return submit(() -> {
+            final FileHasher fileHasher = workers == null ? hasher : hashers.get();
+            return edgeBlock > 0 ? fileHasher.hashEdges(file, edgeBlock) : fileHasher.hash(file);
+        });
+    }
+
+    /**
+     * Runs an auxiliary task on the workers, or in place when the pipeline is sequential.
+     */
+    <T> Future<T> submit(Callable<T> task) {
+        if (workers != null) {
+            return workers.submit(task);
+        }
+        try {
+            return CompletableFuture.completedFuture(task.call());
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Waits for a task result, rethrowing its {@link IOException} as is.
+     */
+    static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for hash");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException cause) {
+                throw cause;
+            }
+            throw new IOException("Hashing failed: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private void add(String name, Future<byte[]> digest) throws IOException {
+        pending.add(new Pending(name, digest));
+        if (pending.size() >= maxPending) {
+            writePending();
+        }
+    }
+
+    private void writePending() throws IOException {
+        final Pending line = pending.poll();
+        writeLine(await(line.digest), line.name);
+    }
+
+    /**
+     * Writes all pending lines.
+     */
+    void flush() throws IOException {
+        while (!pending.isEmpty()) {
+            writePending();
+        }
+        if (deduplicator != null) {
+            boolean first = true;
+            for (List<Deduplicator.Candidate> group : deduplicator.duplicates(this)) {
+                if (!first) {
+                    writer.write(LINE_SEPARATOR);
+                }
+                first = false;
+                for (Deduplicator.Candidate candidate : group) {
+                    writeLine(candidate.digest, candidate.name);
+                }
+            }
+            System.err.println(deduplicator.statistics());
+        }
+    }
+
+    @Override
+    public void close() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+}
@@ -1,4 +1,126 @@
 package info.kgeorgiy.ja.mikhailov.walk;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * Like {@link Walk}, but hashes every file under the directories from the input file.
+ * <p>
+ * Directories are visited depth-first with entries in file name order, so the output does not depend on
+ * the number of threads. Listings of the next {@code PREFETCH} subdirectories are read by the workers
+ * while earlier files are hashed; only the listings on the current path are kept in memory.
+ * Symbolic links are not followed during traversal.
+ */
 public class RecursiveWalk {
+
+    private static final int PREFETCH = 4;
+
+    private static final class Entry {
+        private final Path path;
+        private final boolean directory;
+        private Future<List<Entry>> listing;
+
+        private Entry(Path path, boolean directory) {
+            this.path = path;
+            this.directory = directory;
+        }
+    }
+
+    private static final class Frame {
+        private final List<Entry> entries;
+        private int next;
+        private int ahead;
+        private int inFlight;
+
+        private Frame(List<Entry> entries) {
+            this.entries = entries;
+        }
+    }
+
+    public static void main(String[] args) {
+        Walk.run(args, "RecursiveWalk", RecursiveWalk::walk);
+    }
+
+    private static void walk(HashPipeline pipeline, String line) throws IOException {
+        final Path root;
+        try {
+            root = Path.of(line);
+        } catch (InvalidPathException e) {
+            System.err.println("Path doesn't exist or you've wrote wrong pathname: " + e.getMessage());
+            pipeline.error(line);
+            return;
+        }
+        if (!Files.isDirectory(root)) {
+            pipeline.hash(line);
+            return;
+        }
+        final Deque<Frame> stack = new ArrayDeque<>();
+        try {
+            stack.push(frame(pipeline, list(root)));
+        } catch (IOException e) {
+            System.err.println("Cannot read directory: " + e.getMessage());
+            pipeline.error(line);
+            return;
+        }
+        while (!stack.isEmpty()) {
+            final Frame frame = stack.peek();
+            if (frame.next == frame.entries.size()) {
+                stack.pop();
+                continue;
+            }
+            final Entry entry = frame.entries.get(frame.next++);
+            if (!entry.directory) {
+                pipeline.hash(entry.path);
+                continue;
+            }
+            final Future<List<Entry>> listing = entry.listing;
+            entry.listing = null;
+            frame.inFlight--;
+            prefetch(pipeline, frame);
+            try {
+                stack.push(frame(pipeline, HashPipeline.await(listing)));
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                System.err.println("Cannot read directory: " + e.getMessage());
+                pipeline.error(entry.path.toString());
+            }
+        }
+    }
+
+    private static Frame frame(HashPipeline pipeline, List<Entry> entries) {
+        final Frame frame = new Frame(entries);
+        prefetch(pipeline, frame);
+        return frame;
+    }
+
+    private static void prefetch(HashPipeline pipeline, Frame frame) {
+        while (frame.inFlight < PREFETCH && frame.ahead < frame.entries.size()) {
+            final Entry entry = frame.entries.get(frame.ahead++);
+            if (entry.directory) {
+                entry.listing = pipeline.submit(() -> list(entry.path));
+                frame.inFlight++;
+            }
+        }
+    }
+
+    private static List<Entry> list(Path directory) throws IOException {
+        final List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                entries.add(new Entry(path, Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)));
+            }
+        } catch (DirectoryIteratorException e) {
+            throw e.getCause();
+        }
+        entries.sort(Comparator.comparing(entry -> entry.path.getFileName()));
+        return entries;
+    }
 }
@@ -2,36 +2,115 @@ package info.kgeorgiy.ja.mikhailov.walk;
 
 import java.io.*;
 import java.nio.file.*;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 public class Walk {
 
-    private static final String HASH_ERROR = String.format("%064x", 0);
-    private static final byte[] BYTES = new byte[4096];
+    /**
+     * Processes one line of the input file.
+     */
+    @FunctionalInterface
+    interface LineHandler {
+        void handle(HashPipeline pipeline, String line) throws IOException;
+    }
 
-    private static String bytesToSha256(MessageDigest messageDigest) {
-        byte[] shaByte = messageDigest.digest();
-        StringBuilder sb = new StringBuilder();
-        for (byte b : shaByte) {
-            String q = Integer.toHexString(0xff & b);
-            q = q.length() == 1 ? "0" + q : q;
-            sb.append(q);
+    public static void main(String[] args) {
+        run(args, "Walk", HashPipeline::hash);
+    }
+
+    /**
+     * Command line options following the input and output file names.
+     */
+    private static final class Options {
+        private int threads = 1;
+        private HashAlgorithm algorithm = HashAlgorithm.SHA_256;
+        private Path cache;
+        private boolean verifyCache;
+        private boolean rebuildCache;
+        private boolean dedupe;
+        private boolean stats;
+    }
+
+    private static Options parseOptions(String[] args) {
+        final Options options = new Options();
+        for (int i = 2; i < args.length; i++) {
+            switch (args[i]) {
+                case "-threads" -> {
+                    if (++i == args.length) {
+                        return null;
+                    }
+                    try {
+                        options.threads = Integer.parseInt(args[i]);
+                    } catch (NumberFormatException e) {
+                        System.err.println("Threads count must be integer: " + e.getMessage());
+                        return null;
+                    }
+                    if (options.threads < 1) {
+                        System.err.println("There must be 1 or more threads");
+                        return null;
+                    }
+                }
+                case "-algorithm" -> {
+                    if (++i == args.length) {
+                        return null;
+                    }
+                    options.algorithm = HashAlgorithm.of(args[i]);
+                    if (options.algorithm == null) {
+                        System.err.println("Unknown algorithm: " + args[i]);
+                        return null;
+                    }
+                }
+                case "-cache" -> {
+                    if (++i == args.length) {
+                        return null;
+                    }
+                    try {
+                        options.cache = Path.of(args[i]);
+                    } catch (InvalidPathException e) {
+                        System.err.println("Wrong cache file name: " + e.getMessage());
+                        return null;
+                    }
+                }
+                case "-verify-cache" -> options.verifyCache = true;
+                case "-rebuild-cache" -> options.rebuildCache = true;
+                case "-dedupe" -> options.dedupe = true;
+                case "-stats" -> options.stats = true;
+                default -> {
+                    return null;
+                }
+            }
+        }
+        if ((options.verifyCache || options.rebuildCache) && options.cache == null) {
+            System.err.println("Cache options require -cache");
+            return null;
         }
-        return sb.toString();
+        if (options.dedupe && options.algorithm != HashAlgorithm.SHA_256) {
+            System.err.println("Duplicates are confirmed with SHA-256, -algorithm " + options.algorithm.title() + " is ignored");
+            options.algorithm = HashAlgorithm.SHA_256;
+        }
+        return options;
     }
 
-    public static void main(String[] args) {
+    static void run(String[] args, String name, LineHandler handler) {
+        final String usage = "Usage: " + name + " <input file> <output file> [-threads <count>]"
+                + " [-algorithm SHA-256|SHA-1|MD5|CRC32C|Adler32] [-cache <file> [-verify-cache] [-rebuild-cache]] [-dedupe] [-stats]";
         if (args == null) {
             System.err.println("Args are null");
             return;
         }
-        if (args.length != 2) {
-            System.err.println("The length of the args must be equal to 2");
+        if (args.length < 2) {
+            System.err.println(usage);
             return;
         }
-        if (args[0] == null || args[1] == null) {
-            System.err.println("Some elements of args array are null");
+        for (String arg : args) {
+            if (arg == null) {
+                System.err.println("Some elements of args array are null");
+                return;
+            }
+        }
+        final Options options = parseOptions(args);
+        if (options == null) {
+            System.err.println(usage);
             return;
         }
         Path fileinput;
@@ -50,17 +129,23 @@ public class Walk {
                 System.err.println("I/O error or dir exists but is not a directory: " + e.getMessage());
             }
         }
+        final HashCache cache = options.cache == null ? null
+                : HashCache.load(options.cache, options.algorithm.title(), options.rebuildCache, options.verifyCache);
+        final WalkMetrics metrics = options.stats ? new WalkMetrics() : null;
         try (BufferedReader bufferedReader = Files.newBufferedReader(fileinput)) {
-            try (BufferedWriter bufferedWriter = Files.newBufferedWriter(fileoutput)) {
+            try (BufferedWriter bufferedWriter = Files.newBufferedWriter(fileoutput);
+                 HashPipeline pipeline = new HashPipeline(bufferedWriter, options.threads, options.algorithm, cache,
+                         options.dedupe, metrics)) {
                 String filename;
                 while ((filename = bufferedReader.readLine()) != null) {
-                    try {
-                        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
-                        calcHash(bufferedWriter, filename, messageDigest);
-                    } catch (NoSuchAlgorithmException e) {
-                        System.err.println("Algorithm is not available: " + e.getMessage());
-                    }
+                    handler.handle(pipeline, filename);
                 }
+                pipeline.flush();
+                if (cache != null) {
+                    saveCache(cache, options.cache);
+                }
+            } catch (NoSuchAlgorithmException e) {
+                System.err.println("Algorithm is not available: " + e.getMessage());
             } catch (IOException e) {
                 System.err.println("There is a problem with your output file: " + e.getMessage());
             }
@@ -68,25 +153,20 @@ public class Walk {
             System.err.println("Access denied file: " + e.getMessage());
         } catch (IOException e) {
             System.err.println("There is a problem with your input file: " + e.getMessage());
+        } finally {
+            if (metrics != null) {
+                metrics.close();
+                System.err.println(metrics.summary());
+            }
         }
     }
 
-    private static void calcHash(BufferedWriter bufferedWriter, String filename, MessageDigest messageDigest) throws IOException {
+    private static void saveCache(HashCache cache, Path file) {
+        System.err.println(cache.statistics());
         try {
-            Path fname = Paths.get(filename);
-            try (InputStream reader = Files.newInputStream(fname)) {
-                int read;
-                while ((read = reader.read(BYTES)) != -1) {
-                    messageDigest.update(BYTES, 0, read);
-                }
-                bufferedWriter.write(bytesToSha256(messageDigest) + " " + filename + System.lineSeparator());
-            } catch (IOException e) {
-                System.err.println("There is a problem with your input file: " + e.getMessage());
-                bufferedWriter.write(HASH_ERROR + " " + filename + System.lineSeparator());
-            }
-        } catch (InvalidPathException e) {
-            System.err.println("Path doesn't exist or you've wrote wrong pathname: " + e.getMessage());
-            bufferedWriter.write(HASH_ERROR + " " + filename + System.lineSeparator());
+            cache.save(file);
+        } catch (IOException e) {
+            System.err.println("Cannot save hash cache: " + e.getMessage());
         }
     }
-}
\ No newline at end of file
+}
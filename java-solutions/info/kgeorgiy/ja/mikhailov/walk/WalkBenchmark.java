@@ -0,0 +1,90 @@
+package info.kgeorgiy.ja.mikhailov.walk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+/**
+ * Measures hashing throughput of every {@link HashAlgorithm} and {@link FileHasher.ReadStrategy} on generated files.
+ * <p>
+ * Usage: {@code WalkBenchmark [<directory> [<size in MiB>...]]}.
+ * Files are created in the given directory (a temporary one by default) and deleted afterwards.
+ * Run it on the storage you want to measure; repeated runs mostly read from the page cache.
+ */
+public class WalkBenchmark {
+
+    private static final long MIB = 1024 * 1024;
+    private static final long[] DEFAULT_SIZES = {1, 16, 256, 1024};
+    private static final int WARMUP = 2;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) {
+        try {
+            final Path directory = args.length > 0 ? Path.of(args[0]) : Files.createTempDirectory("walk-benchmark");
+            try {
+                long[] sizes = DEFAULT_SIZES;
+                if (args.length > 1) {
+                    sizes = new long[args.length - 1];
+                    for (int i = 1; i < args.length; i++) {
+                        sizes[i - 1] = Long.parseLong(args[i]);
+                    }
+                }
+                System.out.printf("%10s %10s %10s %10s%n", "size, MiB", "algorithm", "strategy", "GB/s");
+                for (long size : sizes) {
+                    final Path file = createFile(directory, size * MIB);
+                    try {
+                        for (HashAlgorithm algorithm : HashAlgorithm.values()) {
+                            final FileHasher hasher = new FileHasher(algorithm);
+                            for (FileHasher.ReadStrategy strategy : FileHasher.ReadStrategy.values()) {
+                                System.out.printf("%10d %10s %10s %10.3f%n", size, algorithm.title(), strategy,
+                                        measure(hasher, file, size * MIB, strategy));
+                            }
+                        }
+                    } finally {
+                        Files.delete(file);
+                    }
+                }
+            } finally {
+                if (args.length == 0) {
+                    Files.delete(directory);
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Sizes must be integers: " + e.getMessage());
+        } catch (NoSuchAlgorithmException e) {
+            System.err.println("Algorithm is not available: " + e.getMessage());
+        } catch (IOException e) {
+            System.err.println("Benchmark failed: " + e.getMessage());
+        }
+    }
+
+    private static double measure(FileHasher hasher, Path file, long size, FileHasher.ReadStrategy strategy) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            hasher.hash(file, strategy);
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            hasher.hash(file, strategy);
+        }
+        return (double) size * RUNS / (System.nanoTime() - start);
+    }
+
+    private static Path createFile(Path directory, long size) throws IOException {
+        final Path file = Files.createTempFile(directory, "walk", ".bin");
+        final byte[] block = new byte[(int) MIB];
+        final Random random = new Random(size);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (long written = 0; written < size; written += block.length) {
+                random.nextBytes(block);
+                out.write(block, 0, (int) Math.min(block.length, size - written));
+            }
+        } catch (IOException e) {
+            Files.delete(file);
+            throw e;
+        }
+        return file;
+    }
+}
@@ -0,0 +1,159 @@
+package info.kgeorgiy.ja.mikhailov.walk;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Throughput counters of a walk: files and bytes, time split between open, read, digest and write,
+ * a log2 histogram of per-file latencies and the slowest files.
+ * <p>
+ * Hashers accumulate phase times per file and report them once, so the read loops only pay for {@link System#nanoTime()}.
+ * A progress line is printed to stderr every {@code PROGRESS_INTERVAL} seconds,
+ * and {@link #summary()} gives the final numbers as a JSON object.
+ */
+class WalkMetrics implements AutoCloseable {
+
+    private static final int PROGRESS_INTERVAL = 5;
+    private static final int SLOWEST = 10;
+    private static final int BUCKETS = 40;
+
+    private static final class Slow {
+        private final String name;
+        private final long nanos;
+
+        private Slow(String name, long nanos) {
+            this.name = name;
+            this.nanos = nanos;
+        }
+    }
+
+    private final long start = System.nanoTime();
+    private final LongAdder files = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder openNanos = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder digestNanos = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder[] latencies = new LongAdder[BUCKETS];
+    private final PriorityQueue<Slow> slowest = new PriorityQueue<>(Comparator.comparingLong(slow -> slow.nanos));
+    private volatile long slowThreshold;
+    private final ScheduledExecutorService progress;
+
+    WalkMetrics() {
+        for (int i = 0; i < BUCKETS; i++) {
+            latencies[i] = new LongAdder();
+        }
+        progress = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "walk-progress");
+            thread.setDaemon(true);
+            return thread;
+        });
+        progress.scheduleAtFixedRate(() -> System.err.println(progressLine()), PROGRESS_INTERVAL, PROGRESS_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Records a hashed file. Cache hits are recorded with no bytes read.
+     */
+    void file(String name, long size, long open, long read, long digest, long total) {
+        files.increment();
+        bytes.add(size);
+        openNanos.add(open);
+        readNanos.add(read);
+        digestNanos.add(digest);
+        latencies[Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(total / 1000))].increment();
+        if (total > slowThreshold) {
+            synchronized (slowest) {
+                slowest.add(new Slow(name, total));
+                if (slowest.size() > SLOWEST) {
+                    slowest.poll();
+                }
+                if (slowest.size() == SLOWEST) {
+                    slowThreshold = slowest.peek().nanos;
+                }
+            }
+        }
+    }
+
+    void error() {
+        errors.increment();
+    }
+
+    void write(long nanos) {
+        writeNanos.add(nanos);
+    }
+
+    private double seconds() {
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private String progressLine() {
+        final double seconds = seconds();
+        return String.format("Progress: %d files, %d errors, %.1f files/s, %.1f MiB/s",
+                files.sum(), errors.sum(), files.sum() / seconds, bytes.sum() / seconds / (1 << 20));
+    }
+
+    String summary() {
+        final double seconds = seconds();
+        final StringBuilder sb = new StringBuilder("{");
+        sb.append("\"files\":").append(files.sum())
+                .append(",\"errors\":").append(errors.sum())
+                .append(",\"bytes\":").append(bytes.sum())
+                .append(",\"seconds\":").append(seconds)
+                .append(",\"filesPerSecond\":").append(files.sum() / seconds)
+                .append(",\"bytesPerSecond\":").append(bytes.sum() / seconds)
+                .append(",\"openSeconds\":").append(openNanos.sum() / 1e9)
+                .append(",\"readSeconds\":").append(readNanos.sum() / 1e9)
+                .append(",\"digestSeconds\":").append(digestNanos.sum() / 1e9)
+                .append(",\"writeSeconds\":").append(writeNanos.sum() / 1e9)
+                .append(",\"latencyMicrosUpTo\":{");
+        String separator = "";
+        for (int i = 0; i < BUCKETS; i++) {
+            final long count = latencies[i].sum();
+            if (count > 0) {
+                sb.append(separator).append('"').append(1L << i).append("\":").append(count);
+                separator = ",";
+            }
+        }
+        sb.append("},\"slowest\":[");
+        final List<Slow> slow;
+        synchronized (slowest) {
+            slow = new ArrayList<>(slowest);
+        }
+        slow.sort(Comparator.comparingLong((Slow s) -> s.nanos).reversed());
+        separator = "";
+        for (Slow s : slow) {
+            sb.append(separator).append("{\"path\":");
+            appendString(sb, s.name);
+            sb.append(",\"millis\":").append(s.nanos / 1e6).append('}');
+            separator = ",";
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static void appendString(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    @Override
+    public void close() {
+        progress.shutdownNow();
+    }
+}